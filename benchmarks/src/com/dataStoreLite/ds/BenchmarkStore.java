@@ -0,0 +1,87 @@
+package com.dataStoreLite.ds;
+
+import org.json.simple.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/*
+Creates and fills the DataStores used by the benchmarks in a temporary directory.
+Stores which would pass MAX_FILE_SIZE are sharded, so every combination of key count and
+value size can be measured.
+ */
+
+final class BenchmarkStore {
+    static final int LOAD_BATCH_SIZE = 1000;
+
+    private BenchmarkStore() {
+    }
+
+    static String key(int i) {
+        return "key" + i;
+    }
+
+    /*
+    JSON object whose JSON string is about valueSize bytes long.
+     */
+
+    static JSONObject value(int valueSize) {
+        JSONObject value = new JSONObject();
+        StringBuilder payload = new StringBuilder(valueSize);
+        for (int i = 0; i < valueSize - 16; i++) {
+            payload.append((char) ('a' + i % 26));
+        }
+        value.put("payload", payload.toString());
+        return value;
+    }
+
+    static Path newDirectory() throws IOException {
+        return Files.createTempDirectory("DataStoreLiteBenchmark");
+    }
+
+    /*
+    Open a store in directory, sharded if keyCount values of valueSize and headroom bytes
+    of further writes do not fit in half of a DataStore file.
+     */
+
+    static IDataStoreLite open(Path directory, int keyCount, int valueSize, long headroom,
+                               DataStoreLiteOptions options) throws IOException {
+        long size = (long) keyCount * (valueSize + DataStoreRecord.HEADER_SIZE + 16) + headroom;
+        int shards = (int) (size / (DataStoreLite.MAX_FILE_SIZE / 2)) + 1;
+        if (shards == 1) {
+            File file = directory.resolve("DataStoreLite.txt").toFile();
+            file.createNewFile();
+            return new DataStoreLite(file.getPath(), options);
+        }
+        return new ShardedDataStoreLite(directory.toString(), shards, options);
+    }
+
+    /*
+    Create keys 0 to keyCount - 1 in batches.
+     */
+
+    static void load(IDataStoreLite store, int keyCount, int valueSize) {
+        JSONObject value = value(valueSize);
+        Map<String, JSONObject> batch = new HashMap<>();
+        for (int i = 0; i < keyCount; i++) {
+            batch.put(key(i), value);
+            if (batch.size() == LOAD_BATCH_SIZE || i == keyCount - 1) {
+                store.createAll(batch, 0);
+                batch.clear();
+            }
+        }
+    }
+
+    static void delete(IDataStoreLite store, Path directory) throws IOException {
+        store.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+}
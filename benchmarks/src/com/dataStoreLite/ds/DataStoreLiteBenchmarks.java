@@ -0,0 +1,35 @@
+package com.dataStoreLite.ds;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/*
+Run the DataStoreLite benchmarks once for every thread count in THREAD_COUNTS.
+Results of every run are written as JSON to benchmarks-<threads>-threads.json.
+
+Arguments: [<benchmark regex> [<param>=<value> ...]]
+e.g. DataStoreLiteBenchmarks ReadBenchmark keyCount=1000 valueSize=100
+ */
+
+public class DataStoreLiteBenchmarks {
+    static final int[] THREAD_COUNTS = {1, 4, 16, 64};
+
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : ".*Benchmark";
+        for (int threads : THREAD_COUNTS) {
+            ChainedOptionsBuilder options = new OptionsBuilder()
+                    .include(include)
+                    .threads(threads)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result("benchmarks-" + threads + "-threads.json");
+            for (int i = 1; i < args.length; i++) {
+                String[] param = args[i].split("=", 2);
+                options.param(param[0], param[1].split(","));
+            }
+            new Runner(options.build()).run();
+        }
+    }
+}
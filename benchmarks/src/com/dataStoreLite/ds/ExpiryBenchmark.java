@@ -0,0 +1,96 @@
+package com.dataStoreLite.ds;
+
+import org.json.simple.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+Cost of TTL churn, the work which used to be the removeExpiredKeys sweep.
+The timer benchmarks measure the expiry engine alone while pendingKeys keys wait to expire.
+createWithTimeToLive measures create of short lived keys, which the timer removes from the cache
+while the benchmark runs.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ExpiryBenchmark {
+    static final long PENDING_EXPIRY_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    @Param({"1000", "100000", "1000000"})
+    int pendingKeys;
+
+    @Param({"100", "1000"})
+    int valueSize;
+
+    private final AtomicLong keyNumber = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private DataStoreLiteTimer timer;
+    private Path directory;
+    private IDataStoreLite store;
+    private JSONObject value;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        timer = new DataStoreLiteTimer("benchmark", key -> expired.incrementAndGet());
+        long expiresAt = System.currentTimeMillis() + PENDING_EXPIRY_MILLIS;
+        for (int i = 0; i < pendingKeys; i++) {
+            timer.schedule(BenchmarkStore.key(i), expiresAt + i);
+        }
+        directory = BenchmarkStore.newDirectory();
+        store = BenchmarkStore.open(directory, 0, valueSize, WriteBenchmark.WRITE_HEADROOM, new DataStoreLiteOptions());
+        value = BenchmarkStore.value(valueSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        timer.close();
+        BenchmarkStore.delete(store, directory);
+    }
+
+    /*
+    A key which gets a time to live and is deleted before it expires.
+     */
+
+    @Benchmark
+    public void scheduleAndCancel() {
+        String key = "s" + keyNumber.incrementAndGet();
+        timer.schedule(key, System.currentTimeMillis() + PENDING_EXPIRY_MILLIS);
+        timer.cancel(key);
+    }
+
+    /*
+    A key which expires within the next 100 milliseconds.
+     */
+
+    @Benchmark
+    public void scheduleExpiring() {
+        timer.schedule("e" + keyNumber.incrementAndGet(),
+                System.currentTimeMillis() + ThreadLocalRandom.current().nextInt(100));
+    }
+
+    @Benchmark
+    public void createWithTimeToLive() {
+        store.create("t" + keyNumber.incrementAndGet(), value, 1);
+    }
+}
@@ -0,0 +1,78 @@
+package com.dataStoreLite.ds;
+
+import org.json.simple.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+Latency and throughput of read.
+With cached = true the reads go to a hot set of 5% of the keys which fits in the cache.
+With cached = false the cache is disabled and every read goes to the file.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ReadBenchmark {
+    static final int HOT_SET_PERCENT = 5;
+
+    @Param({"1000", "100000", "1000000"})
+    int keyCount;
+
+    @Param({"100", "1000", "16000"})
+    int valueSize;
+
+    @Param({"true", "false"})
+    boolean cached;
+
+    private Path directory;
+    private IDataStoreLite store;
+    private int hotCount;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        hotCount = Math.max(1, keyCount * HOT_SET_PERCENT / 100);
+        long cacheSize = cached ? 2L * hotCount * (valueSize + BenchmarkStore.key(keyCount).length()) : 0;
+        directory = BenchmarkStore.newDirectory();
+        store = BenchmarkStore.open(directory, keyCount, valueSize, 0, new DataStoreLiteOptions().cacheSize(cacheSize));
+        BenchmarkStore.load(store, keyCount, valueSize);
+        if (cached) {
+            // Read the hot set twice so it is promoted to the protected segment of the cache
+            for (int round = 0; round < 2; round++) {
+                for (int i = 0; i < hotCount; i++) {
+                    store.read(BenchmarkStore.key(i));
+                }
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkStore.delete(store, directory);
+    }
+
+    @Benchmark
+    public JSONObject read() {
+        int bound = cached ? hotCount : keyCount;
+        return store.read(BenchmarkStore.key(ThreadLocalRandom.current().nextInt(bound)));
+    }
+}
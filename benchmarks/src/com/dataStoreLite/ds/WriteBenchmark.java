@@ -0,0 +1,133 @@
+package com.dataStoreLite.ds;
+
+import org.json.simple.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+Latency and throughput of create and delete on a store which already holds keyCount keys.
+Every thread creates its own new keys, and deletes keys it created before the iteration.
+The store is sharded with WRITE_HEADROOM bytes to spare, so creates are not rejected
+for passing MAX_FILE_SIZE during the measurement.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class WriteBenchmark {
+    static final long WRITE_HEADROOM = 8L * DataStoreLite.MAX_FILE_SIZE;
+    static final long DELETE_BYTES_PER_ITERATION = 256 * 1024 * 1024; // Values created for all threads before each delete iteration
+    static final int MIN_DELETES_PER_ITERATION = 1000;
+
+    @Param({"1000", "100000", "1000000"})
+    int keyCount;
+
+    @Param({"100", "1000", "16000"})
+    int valueSize;
+
+    private final AtomicInteger threadNumber = new AtomicInteger();
+    private Path directory;
+    private IDataStoreLite store;
+    private JSONObject value;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = BenchmarkStore.newDirectory();
+        store = BenchmarkStore.open(directory, keyCount, valueSize, WRITE_HEADROOM, new DataStoreLiteOptions());
+        BenchmarkStore.load(store, keyCount, valueSize);
+        value = BenchmarkStore.value(valueSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkStore.delete(store, directory);
+    }
+
+    /*
+    New keys of one benchmark thread. Keys are at most MAX_KEY_LENGTH characters long.
+     */
+
+    @State(Scope.Thread)
+    public static class NewKeys {
+        private String prefix;
+        private int created;
+
+        @Setup(Level.Trial)
+        public void setUp(WriteBenchmark benchmark) {
+            prefix = "c" + benchmark.threadNumber.incrementAndGet() + "-";
+        }
+
+        String next() {
+            return prefix + created++;
+        }
+    }
+
+    /*
+    Keys which one benchmark thread deletes. They are created before every iteration.
+    Once they are all deleted, further deletes measure the path of a missing key.
+     */
+
+    @State(Scope.Thread)
+    public static class KeysToDelete {
+        private String prefix;
+        private int created;
+        private int deleted;
+
+        @Setup(Level.Trial)
+        public void setUp(WriteBenchmark benchmark) {
+            prefix = "d" + benchmark.threadNumber.incrementAndGet() + "-";
+        }
+
+        @Setup(Level.Iteration)
+        public void createKeys(WriteBenchmark benchmark, BenchmarkParams params) {
+            long count = Math.max(MIN_DELETES_PER_ITERATION,
+                    DELETE_BYTES_PER_ITERATION / ((long) benchmark.valueSize * params.getThreads()));
+            deleted = created;
+            Map<String, JSONObject> batch = new HashMap<>();
+            for (long i = 0; i < count; i++) {
+                batch.put(prefix + created++, benchmark.value);
+                if (batch.size() == BenchmarkStore.LOAD_BATCH_SIZE) {
+                    benchmark.store.createAll(batch, 0);
+                    batch.clear();
+                }
+            }
+            benchmark.store.createAll(batch, 0);
+        }
+
+        String next() {
+            return prefix + deleted++;
+        }
+    }
+
+    @Benchmark
+    public void create(NewKeys keys) {
+        store.create(keys.next(), value);
+    }
+
+    @Benchmark
+    public void delete(KeysToDelete keys) {
+        store.delete(keys.next());
+    }
+}
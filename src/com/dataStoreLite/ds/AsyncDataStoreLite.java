@@ -0,0 +1,215 @@
+package com.dataStoreLite.ds;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.Logger;
+import org.json.simple.JSONObject;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/*
+Asynchronous facade of a DataStore.
+Every operation returns a CompletableFuture at once and runs on a bounded pool of I/O threads,
+so callers on an event loop never wait for the file.
+
+Backpressure: at most maxPendingWrites creates and deletes are queued or running at a time.
+A write beyond that, or any operation while the I/O queue is full, completes exceptionally
+with a RejectedExecutionException instead of blocking the caller. Callers retry or shed load.
+A write which cannot be written to the file completes exceptionally with the UncheckedIOException of the DataStore.
+ */
+
+public class AsyncDataStoreLite {
+    static final Logger DSLog = (Logger) LogManager.getLogger(LogManager.ROOT_LOGGER_NAME);
+    static final int DEFAULT_IO_THREADS = 64; // Threads blocked on file I/O, not CPU bound
+    static final int DEFAULT_MAX_PENDING = 10000; // Operations queued for the I/O threads
+    static final int DEFAULT_MAX_PENDING_WRITES = 4096; // Creates and deletes in flight
+
+    private final IDataStoreLite dataStore;
+    private final ThreadPoolExecutor ioExecutor;
+    private final int maxPendingWrites;
+    private final Semaphore writePermits;
+
+    /**
+     * Asynchronous facade of dataStore with the default pool and queue sizes.
+     *
+     * @param dataStore DataStore which runs the operations, closed with the facade
+     */
+
+    AsyncDataStoreLite(IDataStoreLite dataStore) {
+        this(dataStore, DEFAULT_IO_THREADS, DEFAULT_MAX_PENDING, DEFAULT_MAX_PENDING_WRITES);
+    }
+
+    /**
+     * @param dataStore        DataStore which runs the operations, closed with the facade
+     * @param ioThreads        Number of threads which run blocking file operations
+     * @param maxPending       Maximum number of operations waiting for an I/O thread
+     * @param maxPendingWrites Maximum number of creates and deletes queued or running
+     */
+
+    AsyncDataStoreLite(IDataStoreLite dataStore, int ioThreads, int maxPending, int maxPendingWrites) {
+        if (ioThreads <= 0 || maxPending <= 0 || maxPendingWrites <= 0) {
+            throw new IllegalArgumentException("Thread count and queue sizes must be positive");
+        }
+        this.dataStore = dataStore;
+        this.maxPendingWrites = maxPendingWrites;
+        this.writePermits = new Semaphore(maxPendingWrites);
+        AtomicInteger threadNumber = new AtomicInteger();
+        ioExecutor = new ThreadPoolExecutor(ioThreads, ioThreads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(maxPending), runnable -> {
+            Thread thread = new Thread(runnable, "DataStoreLite-IO-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        ioExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /*
+    Run a read on the I/O threads, or fail at once if the queue is full.
+     */
+
+    private <T> CompletableFuture<T> submit(Supplier<T> operation) {
+        try {
+            return CompletableFuture.supplyAsync(operation, ioExecutor);
+        } catch (RejectedExecutionException e) {
+            return rejected("DataStore I/O queue is full");
+        }
+    }
+
+    /*
+    Run a write on the I/O threads while holding one of the write permits.
+     */
+
+    private <T> CompletableFuture<T> submitWrite(Supplier<T> operation) {
+        if (!writePermits.tryAcquire()) {
+            return rejected("DataStore write queue is full");
+        }
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return operation.get();
+                } finally {
+                    writePermits.release();
+                }
+            }, ioExecutor);
+        } catch (RejectedExecutionException e) {
+            writePermits.release();
+            return rejected("DataStore I/O queue is full");
+        }
+    }
+
+    private static <T> CompletableFuture<T> rejected(String message) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(new RejectedExecutionException(message));
+        return future;
+    }
+
+    /**
+     * Create Data in the Key Value Data Store.
+     *
+     * @param key   String with maximum length of 32 Characters
+     * @param value JSON Object with Maximum size of 16KB
+     * @return Future of true once the Data is written, false if the key is already available or invalid
+     */
+
+    public CompletableFuture<Boolean> createAsync(String key, JSONObject value) {
+        return createAsync(key, value, 0);
+    }
+
+    /**
+     * Create Data in the Key Value Data Store.
+     *
+     * @param key        String with maximum length of 32 Characters
+     * @param value      JSON Object with Maximum size of 16KB
+     * @param timeToLive Integer representing the number of seconds
+     *                   the key should be retained in the data store
+     * @return Future of true once the Data is written, false if the key is already available or invalid
+     */
+
+    public CompletableFuture<Boolean> createAsync(String key, JSONObject value, int timeToLive) {
+        return submitWrite(() -> dataStore.create(key, value, timeToLive));
+    }
+
+    /**
+     * Read the value from dataStore.
+     *
+     * @param key String for the required JSON Object
+     * @return Future of the read only JSON Object, empty if the key is not found
+     */
+
+    public CompletableFuture<JSONObject> readAsync(String key) {
+        return submit(() -> dataStore.read(key));
+    }
+
+    /**
+     * Delete Data from DataStore for given key.
+     *
+     * @param key Key to remove
+     * @return Future of true once the delete is written, false if the key is not found
+     */
+
+    public CompletableFuture<Boolean> deleteAsync(String key) {
+        return submitWrite(() -> dataStore.delete(key));
+    }
+
+    /**
+     * Create a batch of Data, see IDataStoreLite.createAll. The batch takes one write permit.
+     *
+     * @return Future of the number of keys created once the batch is written
+     */
+
+    public CompletableFuture<Integer> createAllAsync(Map<String, JSONObject> values, int timeToLive) {
+        return submitWrite(() -> dataStore.createAll(values, timeToLive));
+    }
+
+    /**
+     * Read a batch of values, see IDataStoreLite.readAll.
+     *
+     * @return Future of the read only JSON Objects by key
+     */
+
+    public CompletableFuture<Map<String, JSONObject>> readAllAsync(Collection<String> keys) {
+        return submit(() -> dataStore.readAll(keys));
+    }
+
+    /**
+     * Delete a batch of keys, see IDataStoreLite.deleteAll. The batch takes one write permit.
+     *
+     * @return Future of the number of keys deleted once the deletes are written
+     */
+
+    public CompletableFuture<Integer> deleteAllAsync(Collection<String> keys) {
+        return submitWrite(() -> dataStore.deleteAll(keys));
+    }
+
+    /**
+     * Number of creates and deletes which are queued or running.
+     */
+
+    public int pendingWrites() {
+        return maxPendingWrites - writePermits.availablePermits();
+    }
+
+    /**
+     * Wait for the operations in flight and close the DataStore.
+     */
+
+    public void close() {
+        ioExecutor.shutdown();
+        try {
+            if (!ioExecutor.awaitTermination(60, TimeUnit.SECONDS)) {
+                DSLog.error("Operations still running while closing the DataStore");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        dataStore.close();
+    }
+}
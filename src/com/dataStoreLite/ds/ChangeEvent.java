@@ -0,0 +1,112 @@
+package com.dataStoreLite.ds;
+
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A create, update, delete or expiry of a key read from the DataStore file by a subscription.
+ * getPosition is the position in the file after the change, store it to resume
+ * a subscription after the change.
+ */
+
+public final class ChangeEvent {
+
+    /*
+    CREATE - the key was created with a value.
+    UPDATE - the value of the key was replaced, see getVersion.
+    DELETE - the key was deleted.
+    EXPIRE - the key was removed because its time to live had passed.
+     */
+
+    public enum Type {
+        CREATE,
+        UPDATE,
+        DELETE,
+        EXPIRE
+    }
+
+    private final Type type;
+    private final String key;
+    private final byte[] value;
+    private final long version;
+    private final int timeToLive;
+    private final long createdMillis;
+    private final long position;
+
+    ChangeEvent(Type type, String key, byte[] value, long version, int timeToLive, long createdMillis, long position) {
+        this.type = type;
+        this.key = key;
+        this.value = value;
+        this.version = version;
+        this.timeToLive = timeToLive;
+        this.createdMillis = createdMillis;
+        this.position = position;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return Serialized JSON value of a CREATE or UPDATE as a read only buffer, null for a DELETE or EXPIRE
+     */
+    public ByteBuffer getValue() {
+        return value == null ? null : ByteBuffer.wrap(value).asReadOnlyBuffer();
+    }
+
+    /**
+     * @return Value of a CREATE or UPDATE parsed as JSON, null for a DELETE or EXPIRE or if the value is not valid JSON
+     */
+    public JSONObject getJSONValue() {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return (JSONObject) new JSONParser().parse(new String(value, StandardCharsets.UTF_8));
+        } catch (ParseException | ClassCastException e) {
+            DataStoreLite.DSLog.error("Unable to parse the value of : " + key);
+            return null;
+        }
+    }
+
+    /**
+     * @return Version of the key written by a CREATE or UPDATE, 0 for a DELETE or EXPIRE
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return Time to live of a CREATE or UPDATE in seconds, 0 if the key does not expire
+     */
+    public int getTimeToLive() {
+        return timeToLive;
+    }
+
+    /**
+     * @return Time the change was written in milliseconds
+     */
+    public long getCreatedMillis() {
+        return createdMillis;
+    }
+
+    /**
+     * @return Position to pass to DataStoreLite.subscribe to resume after this change
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + key + " @" + Long.toHexString(position);
+    }
+}
@@ -0,0 +1,20 @@
+package com.dataStoreLite.ds;
+
+import java.util.List;
+
+/**
+ * Receives the changes of a DataStore subscribed to with DataStoreLite.subscribe.
+ * Called from the thread of the subscription, one batch at a time. The next batch is only read
+ * from the DataStore file once this method returns, so a slow listener falls behind on the file
+ * rather than buffering changes in memory, and gets larger batches while it catches up.
+ */
+
+public interface ChangeListener {
+
+    /**
+     * @param changes Changes in the order they were written, at least one.
+     *                The position of the last change is where to resume after this batch.
+     *                An exception thrown here closes the subscription.
+     */
+    void onChanges(List<ChangeEvent> changes);
+}
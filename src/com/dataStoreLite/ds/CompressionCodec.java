@@ -0,0 +1,13 @@
+package com.dataStoreLite.ds;
+
+/*
+Compression of the values stored in the DataStore file.
+The codec of every record is kept in its flags, so a file can hold records written with different codecs.
+NONE - values are stored as JSON text.
+DEFLATE - values above the compression threshold are stored deflated, unless that does not make them smaller.
+ */
+
+public enum CompressionCodec {
+    NONE,
+    DEFLATE
+}
@@ -0,0 +1,283 @@
+package com.dataStoreLite.ds;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+Read cache of a DataStore, bounded by the size of the cached keys and values.
+Values are kept parsed, as ImmutableJSONObjects. The size of an entry is the length of its key
+and of the JSON string of its value, so a value weighs at most MAX_JSON_OBJECT_SIZE.
+
+Eviction follows a segmented LRU policy. A new entry starts in the probation segment and moves
+to the protected segment when it is read again. The protected segment holds up to
+PROTECTED_RATIO of the budget, its least recently used entries fall back to probation.
+Entries are evicted from probation first, so keys which are read once do not push out the hot set.
+
+The cache is split into partitions by key hash, each with its own lock and an equal share of the budget.
+
+With an off heap size, the serialized values are also kept in a DataStoreOffHeapCache, which can be
+much larger than the heap tier. A value which is no longer on the heap is parsed again from the off heap
+tier instead of being read from the file, so the heap tier can be kept small.
+ */
+
+class DataStoreCache {
+    static final int PARTITIONS = 16;
+    static final double PROTECTED_RATIO = 0.8;
+
+    private final Partition[] partitions = new Partition[PARTITIONS];
+    private final DataStoreOffHeapCache offHeap; // null without an off heap tier
+    final LongAdder offHeapHits = new LongAdder();
+
+    DataStoreCache(long maxSize) {
+        this(maxSize, 0);
+    }
+
+    DataStoreCache(long maxSize, long offHeapSize) {
+        for (int i = 0; i < PARTITIONS; i++) {
+            partitions[i] = new Partition(maxSize / PARTITIONS);
+        }
+        offHeap = offHeapSize > 0 ? new DataStoreOffHeapCache(offHeapSize) : null;
+    }
+
+    private Partition partitionOf(String key) {
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        return partitions[(hash & 0x7FFFFFFF) % PARTITIONS];
+    }
+
+    static long sizeOf(String key, ImmutableJSONObject value) {
+        return key.length() + value.size;
+    }
+
+    ImmutableJSONObject get(String key) {
+        ImmutableJSONObject value = partitionOf(key).get(key);
+        if (value != null || offHeap == null) {
+            return value;
+        }
+        byte[] json = offHeap.get(key);
+        if (json == null) {
+            return null;
+        }
+        value = DataStoreLite.parseValue(json);
+        if (value != null) {
+            offHeapHits.increment();
+            partitionOf(key).put(key, value);
+        }
+        return value;
+    }
+
+    /*
+    Serialized value of key, only available from the off heap tier.
+     */
+
+    byte[] getSerialized(String key) {
+        return offHeap == null ? null : offHeap.get(key);
+    }
+
+    void put(String key, ImmutableJSONObject value) {
+        partitionOf(key).put(key, value);
+    }
+
+    /*
+    Cache a value along with its serialized form, which goes to the off heap tier.
+     */
+
+    void put(String key, ImmutableJSONObject value, byte[] json) {
+        partitionOf(key).put(key, value);
+        if (offHeap != null) {
+            offHeap.put(key, json);
+        }
+    }
+
+    void putAll(Map<String, ImmutableJSONObject> values) {
+        for (Map.Entry<String, ImmutableJSONObject> entry : values.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /*
+    Cache a serialized value in the off heap tier only, without parsing it.
+     */
+
+    void putSerialized(String key, byte[] json) {
+        if (offHeap != null) {
+            offHeap.put(key, json);
+        }
+    }
+
+    void remove(String key) {
+        partitionOf(key).remove(key);
+        if (offHeap != null) {
+            offHeap.remove(key);
+        }
+    }
+
+    void removeAll(Collection<String> keys) {
+        for (String key : keys) {
+            remove(key);
+        }
+    }
+
+    boolean containsKey(String key) {
+        return partitionOf(key).containsKey(key);
+    }
+
+    void clear() {
+        for (Partition partition : partitions) {
+            partition.clear();
+        }
+        if (offHeap != null) {
+            offHeap.clear();
+        }
+    }
+
+    /*
+    Number of cached entries.
+     */
+
+    int size() {
+        int size = 0;
+        for (Partition partition : partitions) {
+            size += partition.count();
+        }
+        return size;
+    }
+
+    /*
+    Number of entries of the off heap tier.
+     */
+
+    int offHeapSize() {
+        return offHeap == null ? 0 : offHeap.size();
+    }
+
+    /*
+    Direct memory taken by the off heap tier.
+     */
+
+    long offHeapAllocatedSize() {
+        return offHeap == null ? 0 : offHeap.allocatedSize();
+    }
+
+    /*
+    Total size of the cached keys and values on the heap.
+     */
+
+    long weightedSize() {
+        long size = 0;
+        for (Partition partition : partitions) {
+            size += partition.weightedSize();
+        }
+        return size;
+    }
+
+    /*
+    One partition of the cache. Both segments are LinkedHashMaps in access order,
+    the first entry of a segment is its least recently used one.
+     */
+
+    private static final class Partition {
+        private final long maxSize;
+        private final long maxProtectedSize;
+        private final LinkedHashMap<String, ImmutableJSONObject> probation = new LinkedHashMap<>(16, 0.75f, true);
+        private final LinkedHashMap<String, ImmutableJSONObject> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+        private long probationSize;
+        private long protectedSize;
+
+        Partition(long maxSize) {
+            this.maxSize = maxSize;
+            this.maxProtectedSize = (long) (maxSize * PROTECTED_RATIO);
+        }
+
+        synchronized ImmutableJSONObject get(String key) {
+            ImmutableJSONObject value = protectedSegment.get(key);
+            if (value != null) {
+                return value;
+            }
+            value = probation.remove(key);
+            if (value == null) {
+                return null;
+            }
+            // Read again while on probation, promote to the protected segment
+            long size = sizeOf(key, value);
+            probationSize -= size;
+            protectedSegment.put(key, value);
+            protectedSize += size;
+            while (protectedSize > maxProtectedSize) {
+                Iterator<Map.Entry<String, ImmutableJSONObject>> lru = protectedSegment.entrySet().iterator();
+                Map.Entry<String, ImmutableJSONObject> demoted = lru.next();
+                lru.remove();
+                long demotedSize = sizeOf(demoted.getKey(), demoted.getValue());
+                protectedSize -= demotedSize;
+                probation.put(demoted.getKey(), demoted.getValue());
+                probationSize += demotedSize;
+            }
+            return value;
+        }
+
+        synchronized void put(String key, ImmutableJSONObject value) {
+            remove(key);
+            long size = sizeOf(key, value);
+            if (size > maxSize) {
+                return;
+            }
+            probation.put(key, value);
+            probationSize += size;
+            evict();
+        }
+
+        synchronized void remove(String key) {
+            ImmutableJSONObject value = probation.remove(key);
+            if (value != null) {
+                probationSize -= sizeOf(key, value);
+                return;
+            }
+            value = protectedSegment.remove(key);
+            if (value != null) {
+                protectedSize -= sizeOf(key, value);
+            }
+        }
+
+        synchronized boolean containsKey(String key) {
+            return probation.containsKey(key) || protectedSegment.containsKey(key);
+        }
+
+        synchronized void clear() {
+            probation.clear();
+            protectedSegment.clear();
+            probationSize = 0;
+            protectedSize = 0;
+        }
+
+        synchronized int count() {
+            return probation.size() + protectedSegment.size();
+        }
+
+        synchronized long weightedSize() {
+            return probationSize + protectedSize;
+        }
+
+        /*
+        Evict the least recently used entries of probation, then of the protected segment,
+        until the partition fits in its budget.
+         */
+
+        private void evict() {
+            while (probationSize + protectedSize > maxSize) {
+                LinkedHashMap<String, ImmutableJSONObject> segment = probation.isEmpty() ? protectedSegment : probation;
+                Iterator<Map.Entry<String, ImmutableJSONObject>> lru = segment.entrySet().iterator();
+                Map.Entry<String, ImmutableJSONObject> evicted = lru.next();
+                lru.remove();
+                long size = sizeOf(evicted.getKey(), evicted.getValue());
+                if (segment == probation) {
+                    probationSize -= size;
+                } else {
+                    protectedSize -= size;
+                }
+            }
+        }
+    }
+}
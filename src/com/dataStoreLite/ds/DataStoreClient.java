@@ -0,0 +1,422 @@
+package com.dataStoreLite.ds;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.Logger;
+import org.json.simple.JSONObject;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+Client of a DataStoreServer, see DataStoreProtocol.
+Requests are sent at once on a single connection and the returned futures are completed by a reader
+thread as the responses arrive, so any number of threads can pipeline requests on one client.
+The blocking methods wait for the response and throw a CompletionException if the request fails.
+Futures are completed on the reader thread, callbacks attached to them should not block.
+ */
+
+public class DataStoreClient {
+    static final Logger DSLog = (Logger) LogManager.getLogger(LogManager.ROOT_LOGGER_NAME);
+    static final int READ_BUFFER_SIZE = 64 * 1024; // Initial input buffer, grows for larger frames
+
+    private final SocketChannel channel;
+    private final Object writeLock = new Object(); // Frames are written whole
+    private final AtomicInteger requestIds = new AtomicInteger();
+    private final Map<Integer, CompletableFuture<Response>> pending = new ConcurrentHashMap<>();
+    private final Thread reader;
+    private volatile boolean closed;
+
+    /**
+     * Connect to a DataStoreServer on a port of the loopback interface.
+     *
+     * @param port Port of the server
+     * @throws IOException if the server cannot be reached
+     */
+
+    DataStoreClient(int port) throws IOException {
+        this(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    /**
+     * @param address Address of the server
+     * @throws IOException if the server cannot be reached
+     */
+
+    DataStoreClient(InetSocketAddress address) throws IOException {
+        channel = SocketChannel.open(address);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        reader = new Thread(this::readResponses, "DataStoreLite-Client");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /*
+    Status and payload of a response which is not an error.
+     */
+
+    private static final class Response {
+        final byte status;
+        final ByteBuffer payload;
+
+        Response(byte status, ByteBuffer payload) {
+            this.status = status;
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * Create Data in the Key Value Data Store of the server.
+     *
+     * @param key        String with maximum length of 32 Characters
+     * @param value      JSON Object with Maximum size of 16KB
+     * @param timeToLive Integer representing the number of seconds
+     *                   the key should be retained in the data store, 0 to keep it
+     * @return Future of true if the key was created, false if it is already available or invalid
+     */
+
+    public CompletableFuture<Boolean> createAsync(String key, JSONObject value, int timeToLive) {
+        return putAsync(key, ByteBuffer.wrap(DataStoreProtocol.utf8(value.toJSONString())), timeToLive);
+    }
+
+    /**
+     * Create Data from an already serialized JSON value, see IDataStoreLite.put.
+     *
+     * @return Future of true if the key was created, false if it is already available or invalid
+     */
+
+    public CompletableFuture<Boolean> putAsync(String key, ByteBuffer value, int timeToLive) {
+        byte[] keyBytes = DataStoreProtocol.utf8(key);
+        int requestId = requestIds.incrementAndGet();
+        ByteBuffer frame = DataStoreProtocol.frame(requestId, DataStoreProtocol.CREATE,
+                DataStoreProtocol.keySize(keyBytes) + 4 + DataStoreProtocol.valueSize(value.remaining()));
+        DataStoreProtocol.putKey(frame, keyBytes);
+        frame.putInt(timeToLive);
+        DataStoreProtocol.putValue(frame, value);
+        return send(requestId, frame).thenApply(response -> response.status == DataStoreProtocol.OK);
+    }
+
+    /**
+     * Read the value of a key as the stored UTF-8 JSON text, see IDataStoreLite.get.
+     *
+     * @return Future of the value, null if the key is not found
+     */
+
+    public CompletableFuture<ByteBuffer> getAsync(String key) {
+        return send(keyRequest(DataStoreProtocol.READ, key)).thenApply(response ->
+                response.status == DataStoreProtocol.OK ? DataStoreProtocol.getValue(response.payload).asReadOnlyBuffer() : null);
+    }
+
+    /**
+     * Read the value of a key.
+     *
+     * @return Future of the read only JSON Object, empty if the key is not found
+     */
+
+    public CompletableFuture<JSONObject> readAsync(String key) {
+        return getAsync(key).thenApply(value -> {
+            JSONObject jsonObject = value == null ? null : DataStoreLite.parseValue(bytes(value));
+            return jsonObject == null ? new JSONObject() : jsonObject;
+        });
+    }
+
+    /**
+     * Delete Data for the given key.
+     *
+     * @return Future of true once the delete is written, false if the key is not found
+     */
+
+    public CompletableFuture<Boolean> deleteAsync(String key) {
+        return send(keyRequest(DataStoreProtocol.DELETE, key))
+                .thenApply(response -> response.status == DataStoreProtocol.OK);
+    }
+
+    /**
+     * Create a batch of Data, see IDataStoreLite.createAll.
+     *
+     * @return Future of the number of keys created once the batch is written, keys which are already
+     * available or invalid are skipped. Completes exceptionally with an IllegalArgumentException
+     * if the server rejected the batch because of a value which is not a JSON object
+     */
+
+    public CompletableFuture<Integer> createAllAsync(Map<String, JSONObject> values, int timeToLive) {
+        List<byte[]> entries = new ArrayList<>(values.size() * 2);
+        int payloadLength = 8;
+        for (Map.Entry<String, JSONObject> entry : values.entrySet()) {
+            byte[] key = DataStoreProtocol.utf8(entry.getKey());
+            byte[] value = DataStoreProtocol.utf8(entry.getValue().toJSONString());
+            entries.add(key);
+            entries.add(value);
+            payloadLength += DataStoreProtocol.keySize(key) + DataStoreProtocol.valueSize(value.length);
+        }
+        int requestId = requestIds.incrementAndGet();
+        ByteBuffer frame = DataStoreProtocol.frame(requestId, DataStoreProtocol.CREATE_ALL, payloadLength);
+        frame.putInt(timeToLive);
+        frame.putInt(values.size());
+        for (int i = 0; i < entries.size(); i += 2) {
+            DataStoreProtocol.putKey(frame, entries.get(i));
+            DataStoreProtocol.putValue(frame, entries.get(i + 1));
+        }
+        return send(requestId, frame).thenApply(response -> {
+            if (response.status == DataStoreProtocol.REJECTED) {
+                throw new IllegalArgumentException("DataStore server rejected the batch, a value is invalid");
+            }
+            return response.payload.getInt();
+        });
+    }
+
+    /**
+     * Read a batch of values, see IDataStoreLite.readAll.
+     *
+     * @return Future of the read only JSON Objects of the keys which were found
+     */
+
+    public CompletableFuture<Map<String, JSONObject>> readAllAsync(Collection<String> keys) {
+        return send(keysRequest(DataStoreProtocol.READ_ALL, keys)).thenApply(response -> {
+            int count = response.payload.getInt();
+            Map<String, JSONObject> values = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                String key = DataStoreProtocol.getKey(response.payload);
+                JSONObject value = DataStoreLite.parseValue(DataStoreProtocol.getValueBytes(response.payload));
+                if (value != null) {
+                    values.put(key, value);
+                }
+            }
+            return values;
+        });
+    }
+
+    /**
+     * Delete a batch of keys, see IDataStoreLite.deleteAll.
+     *
+     * @return Future of true once the deletes are written, false if some keys were not found
+     */
+
+    public CompletableFuture<Boolean> deleteAllAsync(Collection<String> keys) {
+        return send(keysRequest(DataStoreProtocol.DELETE_ALL, keys))
+                .thenApply(response -> response.status == DataStoreProtocol.OK);
+    }
+
+    /**
+     * Create Data and wait for it to be written, see createAsync.
+     *
+     * @return true if the key was created
+     */
+
+    public boolean create(String key, JSONObject value, int timeToLive) {
+        return createAsync(key, value, timeToLive).join();
+    }
+
+    /**
+     * Create Data from an already serialized JSON value and wait for it to be written, see putAsync.
+     *
+     * @return true if the key was created
+     */
+
+    public boolean put(String key, ByteBuffer value, int timeToLive) {
+        return putAsync(key, value, timeToLive).join();
+    }
+
+    /**
+     * @return Stored UTF-8 JSON text of the key, null if the key is not found
+     */
+
+    public ByteBuffer get(String key) {
+        return getAsync(key).join();
+    }
+
+    /**
+     * @return Read only JSON Object of the key, empty if the key is not found
+     */
+
+    public JSONObject read(String key) {
+        return readAsync(key).join();
+    }
+
+    /**
+     * @return true if the key was deleted, false if it is not found
+     */
+
+    public boolean delete(String key) {
+        return deleteAsync(key).join();
+    }
+
+    /**
+     * @return Number of keys which were created
+     */
+
+    public int createAll(Map<String, JSONObject> values, int timeToLive) {
+        return createAllAsync(values, timeToLive).join();
+    }
+
+    public Map<String, JSONObject> readAll(Collection<String> keys) {
+        return readAllAsync(keys).join();
+    }
+
+    /**
+     * @return true if every key was deleted, false if some keys were not found
+     */
+
+    public boolean deleteAll(Collection<String> keys) {
+        return deleteAllAsync(keys).join();
+    }
+
+    /**
+     * Close the connection. Requests waiting for a response fail.
+     */
+
+    public void close() {
+        closed = true;
+        try {
+            channel.close();
+            reader.join();
+        } catch (IOException e) {
+            DSLog.error("Unable to close the connection to the DataStore server : " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static byte[] bytes(ByteBuffer value) {
+        byte[] bytes = new byte[value.remaining()];
+        value.duplicate().get(bytes);
+        return bytes;
+    }
+
+    private CompletableFuture<Response> send(ByteBuffer frame) {
+        return send(frame.getInt(DataStoreProtocol.LENGTH_SIZE), frame);
+    }
+
+    private ByteBuffer keyRequest(byte type, String key) {
+        byte[] keyBytes = DataStoreProtocol.utf8(key);
+        ByteBuffer frame = DataStoreProtocol.frame(requestIds.incrementAndGet(), type, DataStoreProtocol.keySize(keyBytes));
+        DataStoreProtocol.putKey(frame, keyBytes);
+        return frame;
+    }
+
+    private ByteBuffer keysRequest(byte type, Collection<String> keys) {
+        List<byte[]> keyBytes = new ArrayList<>(keys.size());
+        int payloadLength = 4;
+        for (String key : keys) {
+            byte[] bytes = DataStoreProtocol.utf8(key);
+            keyBytes.add(bytes);
+            payloadLength += DataStoreProtocol.keySize(bytes);
+        }
+        ByteBuffer frame = DataStoreProtocol.frame(requestIds.incrementAndGet(), type, payloadLength);
+        frame.putInt(keyBytes.size());
+        for (byte[] key : keyBytes) {
+            DataStoreProtocol.putKey(frame, key);
+        }
+        return frame;
+    }
+
+    /*
+    Write a request frame and register the future of its response.
+    The frame is written whole under writeLock, requests of other threads are written before or after it.
+     */
+
+    private CompletableFuture<Response> send(int requestId, ByteBuffer frame) {
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        pending.put(requestId, future);
+        if (closed) {
+            // The reader may have failed the pending requests before this one was added
+            pending.remove(requestId);
+            future.completeExceptionally(new IOException("Connection to the DataStore server is closed"));
+            return future;
+        }
+        frame.flip();
+        try {
+            synchronized (writeLock) {
+                while (frame.hasRemaining()) {
+                    channel.write(frame);
+                }
+            }
+        } catch (IOException e) {
+            pending.remove(requestId);
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /*
+    Read response frames until the connection is closed and complete the futures of their requests.
+    Every read takes as many bytes as are available, so pipelined responses are read in few calls.
+     */
+
+    private void readResponses() {
+        ByteBuffer input = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        try {
+            while (channel.read(input) >= 0) {
+                input.flip();
+                int needed = 0;
+                while (input.remaining() >= DataStoreProtocol.LENGTH_SIZE) {
+                    int length = input.getInt(input.position());
+                    if (length < DataStoreProtocol.HEADER_SIZE - DataStoreProtocol.LENGTH_SIZE
+                            || length > DataStoreProtocol.MAX_FRAME_SIZE) {
+                        throw new IOException("Invalid frame length : " + length);
+                    }
+                    if (input.remaining() < DataStoreProtocol.LENGTH_SIZE + length) {
+                        needed = DataStoreProtocol.LENGTH_SIZE + length;
+                        break;
+                    }
+                    input.position(input.position() + DataStoreProtocol.LENGTH_SIZE);
+                    int requestId = input.getInt();
+                    byte status = input.get();
+                    byte[] payload = new byte[length - (DataStoreProtocol.HEADER_SIZE - DataStoreProtocol.LENGTH_SIZE)];
+                    input.get(payload);
+                    complete(requestId, status, ByteBuffer.wrap(payload));
+                }
+                input.compact();
+                if (needed > input.capacity()) {
+                    input.flip();
+                    input = ByteBuffer.allocate(needed).put(input);
+                }
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                DSLog.error("Connection to the DataStore server failed : " + e.getMessage());
+            }
+        } finally {
+            closed = true;
+            try {
+                channel.close();
+            } catch (IOException e) {
+                DSLog.error("Unable to close the connection to the DataStore server : " + e.getMessage());
+            }
+            for (Integer requestId : pending.keySet()) {
+                CompletableFuture<Response> future = pending.remove(requestId);
+                if (future != null) {
+                    future.completeExceptionally(new IOException("Connection to the DataStore server is closed"));
+                }
+            }
+        }
+    }
+
+    private void complete(int requestId, byte status, ByteBuffer payload) {
+        CompletableFuture<Response> future = pending.remove(requestId);
+        if (future == null) {
+            return;
+        }
+        if (status == DataStoreProtocol.BUSY) {
+            future.completeExceptionally(new RejectedExecutionException("DataStore server is busy"));
+        } else if (status == DataStoreProtocol.ERROR) {
+            future.completeExceptionally(new IOException("DataStore server error : "
+                    + new String(DataStoreProtocol.getValueBytes(payload), StandardCharsets.UTF_8)));
+        } else {
+            future.complete(new Response(status, payload));
+        }
+    }
+}
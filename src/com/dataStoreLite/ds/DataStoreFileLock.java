@@ -0,0 +1,126 @@
+package com.dataStoreLite.ds;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+Locks shared by all processes which open the same DataStore file.
+The locks are taken on <DataStore file>.lock, so the DataStore file itself is never locked.
+
+WRITE_REGION - exclusive while a process appends to the DataStore file, so appends
+               of different processes never interleave.
+READ_REGION  - shared by every process which has the DataStore file open. Compaction replaces
+               the file and needs it exclusively, so it only runs when no other process uses the file.
+
+File locks are held by the JVM, not by a thread or a channel, so every DataStore of the same file
+in this JVM shares one DataStoreFileLock. writeMutex orders the writers inside the JVM.
+ */
+
+final class DataStoreFileLock {
+    static final long WRITE_REGION = 0;
+    static final long READ_REGION = 1;
+
+    private static final Map<String, DataStoreFileLock> OPEN_LOCKS = new HashMap<>();
+
+    private final String lockPath;
+    private final FileChannel channel;
+    private final ReentrantLock writeMutex = new ReentrantLock();
+    private FileLock sharedLock;
+    private FileLock writeLock;
+    private int openCount;
+
+    private DataStoreFileLock(String lockPath) throws IOException {
+        this.lockPath = lockPath;
+        channel = FileChannel.open(Paths.get(lockPath), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        sharedLock = channel.lock(READ_REGION, 1, true);
+    }
+
+    /*
+    Open the locks of a DataStore file, taking the shared lock the first time the file is opened in this JVM.
+     */
+
+    static DataStoreFileLock open(String dataFilePath) throws IOException {
+        String lockPath = new File(dataFilePath).getCanonicalPath() + ".lock";
+        synchronized (OPEN_LOCKS) {
+            DataStoreFileLock lock = OPEN_LOCKS.get(lockPath);
+            if (lock == null) {
+                lock = new DataStoreFileLock(lockPath);
+                OPEN_LOCKS.put(lockPath, lock);
+            }
+            lock.openCount++;
+            return lock;
+        }
+    }
+
+    /*
+    Release the locks of a DataStore file once every DataStore of the file in this JVM is closed.
+     */
+
+    void close() throws IOException {
+        synchronized (OPEN_LOCKS) {
+            if (--openCount > 0) {
+                return;
+            }
+            OPEN_LOCKS.remove(lockPath);
+        }
+        channel.close();
+    }
+
+    /*
+    Exclusive write access across threads and processes.
+     */
+
+    void lockExclusive() throws IOException {
+        writeMutex.lock();
+        try {
+            writeLock = channel.lock(WRITE_REGION, 1, false);
+        } catch (IOException | RuntimeException e) {
+            writeMutex.unlock();
+            throw e;
+        }
+    }
+
+    void unlockExclusive() throws IOException {
+        try {
+            writeLock.release();
+        } finally {
+            writeLock = null;
+            writeMutex.unlock();
+        }
+    }
+
+    /*
+    Check that the caller is the only user of the DataStore file, in this JVM and in every other process.
+    Must be called with exclusive write access. On success the shared lock is upgraded to an exclusive lock,
+    which is turned back into a shared lock by releaseSole().
+     */
+
+    boolean tryLockSole() throws IOException {
+        synchronized (OPEN_LOCKS) {
+            if (openCount > 1) {
+                return false;
+            }
+        }
+        sharedLock.release();
+        FileLock soleLock = channel.tryLock(READ_REGION, 1, false);
+        if (soleLock == null) {
+            sharedLock = channel.lock(READ_REGION, 1, true);
+            return false;
+        }
+        sharedLock = soleLock;
+        return true;
+    }
+
+    void releaseSole() throws IOException {
+        sharedLock.release();
+        sharedLock = channel.lock(READ_REGION, 1, true);
+    }
+}
@@ -0,0 +1,200 @@
+package com.dataStoreLite.ds;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/*
+Long lived index of the DataStore file.
+Maps every key to the offset and length of its record in the file so that
+read, create and delete don't have to parse the whole file again.
+The index is built once when the DataStore is opened and updated on every write.
+It also keeps track of the bytes taken by dead records (deleted records and tombstones),
+which is used to decide when the file should be compacted.
+Keys are also kept in sorted order for range and prefix scans.
+A checkpoint of the index is loaded instead of scanning the file when there is one, see DataStoreIndexSnapshot.
+ */
+
+class DataStoreIndex {
+
+    /*
+    Position of a record in the DataStore file.
+    offset    - byte offset of the first byte of the record
+    length    - length of the record in bytes
+    expiresAt - time in milliseconds at which the time to live of the record passes, 0 if it has none
+    version   - version of the record, see DataStoreRecord
+     */
+
+    static final class RecordPointer {
+        final long offset;
+        final int length;
+        final long expiresAt;
+        final long version;
+
+        RecordPointer(long offset, int length, long expiresAt, long version) {
+            this.offset = offset;
+            this.length = length;
+            this.expiresAt = expiresAt;
+            this.version = version;
+        }
+    }
+
+    private final ConcurrentHashMap<String, RecordPointer> pointers;
+    private final ConcurrentSkipListSet<String> sortedKeys = new ConcurrentSkipListSet<>();
+    private final AtomicLong deadBytes = new AtomicLong();
+    private volatile long indexedLength; // Length of the file covered by the index
+
+    DataStoreIndex() {
+        pointers = new ConcurrentHashMap<>();
+    }
+
+    DataStoreIndex(int expectedKeys) {
+        pointers = new ConcurrentHashMap<>(expectedKeys);
+    }
+
+    /*
+    Scan the DataStore file once and build the index.
+    Only the key of every record is decoded, the value is skipped.
+    The scan stops at the first incomplete or corrupt record, see indexedLength().
+     */
+
+    static DataStoreIndex build(FileChannel channel) throws IOException {
+        DataStoreIndex index = new DataStoreIndex();
+        index.indexedLength = DataStoreRecord.FILE_HEADER_SIZE;
+        return index.replayTail(channel);
+    }
+
+    /*
+    Load the checkpoint of the index and its secondary indexes and replay the records appended after it.
+    onTailChange is called with the key of every record replayed after the checkpoint.
+    Falls back to a scan of the whole file if there is no usable checkpoint.
+     */
+
+    static DataStoreIndex build(FileChannel channel, Path snapshotPath, Map<String, DataStoreSecondaryIndex> secondaryIndexes,
+                                Consumer<String> onTailChange) throws IOException {
+        DataStoreIndex index = DataStoreIndexSnapshot.load(snapshotPath, channel, secondaryIndexes);
+        if (index == null) {
+            return build(channel);
+        }
+        DataStoreLite.DSLog.info("Loaded index checkpoint of " + index.size() + " keys, replaying from offset : "
+                + index.indexedLength);
+        index.replay(channel, onTailChange);
+        return index.replayTail(channel);
+    }
+
+    private DataStoreIndex replayTail(FileChannel channel) throws IOException {
+        replay(channel, null);
+        if (indexedLength < channel.size()) {
+            DataStoreLite.DSLog.error("Incomplete record at offset : " + indexedLength);
+        }
+        return this;
+    }
+
+    /*
+    Add the records written after indexedLength to the index, for example by another process.
+    onChange is called with the key of every record replayed, it may be null.
+    Stops before an incomplete record at the end of the file. Throws IOException at a corrupt record,
+    the records replayed before it stay in the index and the file is left as it is.
+     */
+
+    void replay(FileChannel channel, Consumer<String> onChange) throws IOException {
+        DataStoreRecordReader reader = new DataStoreRecordReader(channel, indexedLength);
+        while (reader.next()) {
+            String key = reader.key();
+            RecordPointer pointer = new RecordPointer(reader.offset(), reader.length(),
+                    DataStoreRecord.expiresAt(reader.timeToLive(), reader.createdMillis()), reader.version());
+            if (reader.isTombstone()) {
+                // Tombstone : the key was deleted after this point
+                RecordPointer deleted = remove(key);
+                if (deleted != null) {
+                    markDead(deleted.length);
+                }
+                markDead(pointer.length);
+            } else {
+                put(key, pointer);
+            }
+            if (onChange != null) {
+                onChange.accept(key);
+            }
+        }
+        indexedLength = reader.position();
+        if (reader.isCorrupt()) {
+            throw new IOException("Corrupt record at offset : " + indexedLength
+                    + ", the DataStore file needs to be repaired");
+        }
+    }
+
+    RecordPointer get(String key) {
+        return pointers.get(key);
+    }
+
+    boolean contains(String key) {
+        return pointers.containsKey(key);
+    }
+
+    void put(String key, RecordPointer pointer) {
+        RecordPointer previous = pointers.put(key, pointer);
+        if (previous != null) {
+            markDead(previous.length);
+        } else {
+            sortedKeys.add(key);
+        }
+    }
+
+    RecordPointer remove(String key) {
+        RecordPointer removed = pointers.remove(key);
+        if (removed != null) {
+            sortedKeys.remove(key);
+        }
+        return removed;
+    }
+
+    /*
+    Keys from fromKey (inclusive) to toKey (exclusive) in sorted order, null for an open end.
+    The view is live, keys created or deleted while it is iterated may or may not be seen.
+     */
+
+    NavigableSet<String> keys(String fromKey, String toKey) {
+        if (fromKey == null && toKey == null) {
+            return sortedKeys;
+        }
+        if (fromKey == null) {
+            return sortedKeys.headSet(toKey, false);
+        }
+        if (toKey == null) {
+            return sortedKeys.tailSet(fromKey, true);
+        }
+        return sortedKeys.subSet(fromKey, true, toKey, false);
+    }
+
+    Set<Map.Entry<String, RecordPointer>> entries() {
+        return pointers.entrySet();
+    }
+
+    int size() {
+        return pointers.size();
+    }
+
+    void markDead(long bytes) {
+        deadBytes.addAndGet(bytes);
+    }
+
+    long deadBytes() {
+        return deadBytes.get();
+    }
+
+    long indexedLength() {
+        return indexedLength;
+    }
+
+    void advanceTo(long length) {
+        indexedLength = length;
+    }
+}
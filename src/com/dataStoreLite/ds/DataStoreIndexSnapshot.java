@@ -0,0 +1,239 @@
+package com.dataStoreLite.ds;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/*
+Checkpoint of the index of a DataStore file, stored next to it as <DataStore file>.index.
+Opening a DataStore loads the checkpoint and only replays the records appended after it,
+instead of scanning the whole file. Expiry times of the keys are part of the index,
+so keys with a time to live keep it across restarts.
+The checkpoint has the format
+[MAGIC int][FORMAT_VERSION short][reserved short][indexed length long][dead bytes long]
+[tail CRC int][key count int] followed by [key length short][key][offset long][length int][expiresAt long]
+[version long] for every key, then [secondary index count int] followed by
+[field length short][field][key count int] and [key length short][key][value length int][value]
+for every secondary index and key, see DataStoreSecondaryIndex. It ends with a CRC of all bytes before it.
+The tail CRC covers the TAIL_SIZE bytes of the DataStore file before the indexed length. A checkpoint
+whose tail does not match the file, for example after the file was compacted or truncated, is ignored.
+ */
+
+final class DataStoreIndexSnapshot {
+    static final int MAGIC = 0x44534C49; // "DSLI"
+    static final short FORMAT_VERSION = 3;
+    static final int TAIL_SIZE = 4096;
+    static final int HEADER_SIZE = 32;
+    static final String SUFFIX = ".index";
+
+    private final List<Map.Entry<String, DataStoreIndex.RecordPointer>> entries;
+    private final Map<String, List<Map.Entry<String, String>>> secondaryEntries; // Field -> indexed value of every key
+    private final long indexedLength;
+    private final long deadBytes;
+    private final int tailCrc;
+
+    private DataStoreIndexSnapshot(List<Map.Entry<String, DataStoreIndex.RecordPointer>> entries,
+                                   Map<String, List<Map.Entry<String, String>>> secondaryEntries,
+                                   long indexedLength, long deadBytes, int tailCrc) {
+        this.entries = entries;
+        this.secondaryEntries = secondaryEntries;
+        this.indexedLength = indexedLength;
+        this.deadBytes = deadBytes;
+        this.tailCrc = tailCrc;
+    }
+
+    /*
+    Copy the index and its secondary indexes. Must be called while the index cannot change,
+    the copy is written later without any lock.
+     */
+
+    static DataStoreIndexSnapshot of(DataStoreIndex index, Collection<DataStoreSecondaryIndex> secondaryIndexes,
+                                     FileChannel channel) throws IOException {
+        Map<String, List<Map.Entry<String, String>>> secondaryEntries = new LinkedHashMap<>();
+        for (DataStoreSecondaryIndex secondary : secondaryIndexes) {
+            secondaryEntries.put(secondary.field, secondary.entries());
+        }
+        return new DataStoreIndexSnapshot(new ArrayList<>(index.entries()), secondaryEntries, index.indexedLength(),
+                index.deadBytes(), tailCrc(channel, index.indexedLength()));
+    }
+
+    long indexedLength() {
+        return indexedLength;
+    }
+
+    /*
+    Write the checkpoint to a temporary file and move it in place, so a checkpoint is never seen half written.
+     */
+
+    void write(Path path) throws IOException {
+        Path temporary = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+        try {
+            CRC32 crc = new CRC32();
+            try (FileOutputStream file = new FileOutputStream(temporary.toFile());
+                 DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(file), crc))) {
+                out.writeInt(MAGIC);
+                out.writeShort(FORMAT_VERSION);
+                out.writeShort(0);
+                out.writeLong(indexedLength);
+                out.writeLong(deadBytes);
+                out.writeInt(tailCrc);
+                out.writeInt(entries.size());
+                for (Map.Entry<String, DataStoreIndex.RecordPointer> entry : entries) {
+                    byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                    DataStoreIndex.RecordPointer pointer = entry.getValue();
+                    out.writeShort(key.length);
+                    out.write(key);
+                    out.writeLong(pointer.offset);
+                    out.writeInt(pointer.length);
+                    out.writeLong(pointer.expiresAt);
+                    out.writeLong(pointer.version);
+                }
+                out.writeInt(secondaryEntries.size());
+                for (Map.Entry<String, List<Map.Entry<String, String>>> secondary : secondaryEntries.entrySet()) {
+                    byte[] field = secondary.getKey().getBytes(StandardCharsets.UTF_8);
+                    out.writeShort(field.length);
+                    out.write(field);
+                    out.writeInt(secondary.getValue().size());
+                    for (Map.Entry<String, String> entry : secondary.getValue()) {
+                        byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                        byte[] value = entry.getValue().getBytes(StandardCharsets.UTF_8);
+                        out.writeShort(key.length);
+                        out.write(key);
+                        out.writeInt(value.length);
+                        out.write(value);
+                    }
+                }
+                out.writeInt((int) crc.getValue());
+                out.flush();
+                file.getFD().sync();
+            }
+            DataStoreLite.moveAtomically(temporary, path);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /*
+    Load the checkpoint of the DataStore file into a new index.
+    The checkpoint is mapped and checked against its CRC in one pass before any key is read.
+    The secondary indexes found in the checkpoint are loaded into the matching declared indexes,
+    which are marked as built.
+    Returns null if there is no checkpoint, or it is corrupt or does not belong to the current file.
+     */
+
+    static DataStoreIndex load(Path path, FileChannel channel, Map<String, DataStoreSecondaryIndex> secondaryIndexes) {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try (FileChannel checkpoint = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (checkpoint.size() < HEADER_SIZE + DataStoreRecord.CRC_SIZE || checkpoint.size() > Integer.MAX_VALUE) {
+                DataStoreLite.DSLog.error("Ignoring corrupt index checkpoint : " + path);
+                return null;
+            }
+            ByteBuffer buffer = checkpoint.map(FileChannel.MapMode.READ_ONLY, 0, checkpoint.size());
+            int end = buffer.limit() - DataStoreRecord.CRC_SIZE;
+            CRC32 crc = new CRC32();
+            ByteBuffer checked = buffer.duplicate();
+            checked.limit(end);
+            crc.update(checked);
+            if (buffer.getInt(end) != (int) crc.getValue()) {
+                DataStoreLite.DSLog.error("Ignoring corrupt index checkpoint : " + path);
+                return null;
+            }
+            if (buffer.getInt() != MAGIC || buffer.getShort() != FORMAT_VERSION) {
+                DataStoreLite.DSLog.error("Ignoring index checkpoint in an unknown format : " + path);
+                return null;
+            }
+            buffer.getShort();
+            long indexedLength = buffer.getLong();
+            long deadBytes = buffer.getLong();
+            int tailCrc = buffer.getInt();
+            if (indexedLength > channel.size() || tailCrc != tailCrc(channel, indexedLength)) {
+                DataStoreLite.DSLog.info("Ignoring index checkpoint of an older DataStore file : " + path);
+                return null;
+            }
+            int count = buffer.getInt();
+            DataStoreIndex index = new DataStoreIndex(count);
+            byte[] key = new byte[DataStoreLite.MAX_KEY_LENGTH * 4];
+            for (int i = 0; i < count; i++) {
+                int keyLength = buffer.getShort() & 0xFFFF;
+                if (keyLength > key.length) {
+                    key = new byte[keyLength];
+                }
+                buffer.get(key, 0, keyLength);
+                long offset = buffer.getLong();
+                int length = buffer.getInt();
+                long expiresAt = buffer.getLong();
+                long version = buffer.getLong();
+                index.put(new String(key, 0, keyLength, StandardCharsets.UTF_8),
+                        new DataStoreIndex.RecordPointer(offset, length, expiresAt, version));
+            }
+            List<DataStoreSecondaryIndex> loaded = new ArrayList<>();
+            int secondaryCount = buffer.getInt();
+            for (int i = 0; i < secondaryCount; i++) {
+                byte[] field = new byte[buffer.getShort() & 0xFFFF];
+                buffer.get(field);
+                DataStoreSecondaryIndex secondary = secondaryIndexes.get(new String(field, StandardCharsets.UTF_8));
+                if (secondary != null) {
+                    secondary.clear();
+                    loaded.add(secondary);
+                }
+                int entryCount = buffer.getInt();
+                for (int j = 0; j < entryCount; j++) {
+                    int keyLength = buffer.getShort() & 0xFFFF;
+                    if (keyLength > key.length) {
+                        key = new byte[keyLength];
+                    }
+                    buffer.get(key, 0, keyLength);
+                    byte[] value = new byte[buffer.getInt()];
+                    buffer.get(value);
+                    if (secondary != null) {
+                        secondary.put(new String(key, 0, keyLength, StandardCharsets.UTF_8),
+                                new String(value, StandardCharsets.UTF_8));
+                    }
+                }
+            }
+            for (DataStoreSecondaryIndex secondary : loaded) {
+                secondary.markBuilt();
+            }
+            index.markDead(deadBytes);
+            index.advanceTo(indexedLength);
+            return index;
+        } catch (IOException | RuntimeException e) {
+            DataStoreLite.DSLog.error("Unable to load index checkpoint : " + path + " " + e.getMessage());
+            return null;
+        }
+    }
+
+    /*
+    CRC of the TAIL_SIZE bytes of the file before length, ties a checkpoint to the file it was taken of.
+     */
+
+    private static int tailCrc(FileChannel channel, long length) throws IOException {
+        long start = Math.max(0, length - TAIL_SIZE);
+        ByteBuffer tail = ByteBuffer.allocate((int) (length - start));
+        while (tail.hasRemaining()) {
+            if (channel.read(tail, start + tail.position()) < 0) {
+                break;
+            }
+        }
+        tail.flip();
+        CRC32 crc = new CRC32();
+        crc.update(tail);
+        return (int) crc.getValue();
+    }
+}
@@ -1,12 +1,39 @@
 package com.dataStoreLite.ds;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
-import java.nio.channels.FileLock;
-import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.core.Logger;
@@ -14,7 +41,9 @@ import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
-import static com.dataStoreLite.ds.DataStoreLiteTimer.scheduleTask;
+import static com.dataStoreLite.ds.DataStoreLiteCompactor.scheduleCheckpoint;
+import static com.dataStoreLite.ds.DataStoreLiteCompactor.scheduleCompaction;
+import static com.dataStoreLite.ds.DataStoreLiteCompactor.throttle;
 
 
 public class DataStoreLite implements IDataStoreLite {
@@ -22,22 +51,40 @@ public class DataStoreLite implements IDataStoreLite {
     static final int MAX_KEY_LENGTH = 32; // Maximum allowable key length (32 chars)
     static final long MAX_FILE_SIZE = 1024 * 1024 * 1024; // Maximum file size (1GB)
     static final long MAX_JSON_OBJECT_SIZE = 16000; // Maximum JSON data size 16KB
-    /* The Data will be stored in file in the following format
+    static final int PURGE_BATCH_SIZE = 4096; // Expired keys purged per hold of indexLock
+    /* The Data is stored in file in the binary record format described in DataStoreRecord.
+    The file is append only. A delete appends a tombstone record.
+    Older versions stored the Data as text in the following format, see DataStoreMigration
     Key[DEFAULT_DELIMITER]Value[DATA_DELIMITER]TimeToLive[DATA_DELIMITER]CreatedTimeInMilliSeconds
      */
     static final String DEFAULT_DELIMITER = "#@@@#";
     static final String DATA_DELIMITER = "###";
-    static ConcurrentHashMap<String, String> keyMap; // Map that keeps track of key with Expired Time
-    static ConcurrentHashMap<String, String> DSCache; // Local Cache that maintains data for which time to live property is valid
-
-    static {
-        keyMap = new ConcurrentHashMap<>();
-        DSCache = new ConcurrentHashMap<>();
-        scheduleTask(); // Run a task to remove the expired keys from the DSCache regularly.
-    }
 
     String filePath; // File location for DataStore
-    FileLock LOCK; // Lock for maintaining single process multi thread mechanism
+    FileChannel dataChannel; // Channel used for positioned reads and appends on the DataStore file
+    DataStoreIndex index; // Index of key to record position in the DataStore file
+    final Map<String, DataStoreSecondaryIndex> secondaryIndexes = new LinkedHashMap<>(); // Field -> index declared in the options
+    DataStoreWriter writer; // Single writer which appends create and delete operations to the file
+    DataStoreMappedFile mappedFile; // Memory mapping of the DataStore file, null unless memory mapped reads are enabled
+    DataStoreLiteOptions options; // Tuning options for the DataStore
+    DataStoreCache DSCache; // Local Cache of recently read values, bounded by options.getCacheSize()
+    DataStoreLiteTimer timer; // Removes the keys from DSCache once their time to live has passed
+    final Queue<String> expiredKeys = new ConcurrentLinkedQueue<>(); // Expired keys waiting for purgeExpired
+    final DataStoreLiteMetrics metrics = new DataStoreLiteMetrics(this); // Latencies, cache hits and file statistics
+    ScheduledExecutorService backgroundExecutor; // Runs compaction and checkpoints of this DataStore, see DataStoreLiteCompactor
+    ScheduledFuture<?> compactionTask; // Background compaction, cancelled when the DataStore is closed
+    ScheduledFuture<?> checkpointTask; // Background checkpoints of the index, null if checkpoints are disabled
+    long checkpointLength = -1; // Indexed length of the last checkpoint written, guarded by compactionLock
+    volatile boolean closed;
+    volatile int generation; // Compaction generation of the DataStore file, kept in its header
+    volatile long committedLength; // Length of the file up to which records are durable, guarded by commits
+    final Object commits = new Object(); // Notified when committedLength or generation changes
+    final Map<Integer, long[]> compactions = new ConcurrentHashMap<>(); // Generation -> end of that file and of its compacted file
+    final List<DataStoreSubscription> subscriptions = new CopyOnWriteArrayList<>(); // Running subscriptions
+    DataStoreFileLock fileLock; // Locks shared with other processes using the DataStore file
+    final StripedLock keyLocks = new StripedLock(StripedLock.DEFAULT_STRIPES); // Per key locks, all of them are taken to swap the file
+    final ReentrantLock indexLock = new ReentrantLock(); // Orders the writer, catching up with other processes and compaction
+    final ReentrantLock compactionLock = new ReentrantLock(); // Held while compacting, close waits for it
     static final Logger DSLog = (Logger) LogManager.getLogger(LogManager.ROOT_LOGGER_NAME);
 
     /**
@@ -56,6 +103,9 @@ public class DataStoreLite implements IDataStoreLite {
             }
         }
         filePath = DEFAULT_DATA_STORE_FILE;
+        options = new DataStoreLiteOptions();
+        DSCache = new DataStoreCache(options.getCacheSize(), options.getOffHeapCacheSize());
+        openStore();
 
     }
 
@@ -67,6 +117,20 @@ public class DataStoreLite implements IDataStoreLite {
      */
 
     DataStoreLite(String customFilePath) {
+        this(customFilePath, new DataStoreLiteOptions());
+    }
+
+    /**
+     * Initialize DataStore with custom file path and tuning options.
+     *
+     * @param customFilePath File path for DataStore
+     *                       Throws Error when the file is not found at the given location.
+     * @param options        Tuning options for the DataStore
+     */
+
+    DataStoreLite(String customFilePath, DataStoreLiteOptions options) {
+        this.options = options;
+        DSCache = new DataStoreCache(options.getCacheSize(), options.getOffHeapCacheSize());
         File customFile = new File(customFilePath);
         if (!(customFile.isFile() && customFile.exists())) {
             try {
@@ -77,59 +141,222 @@ public class DataStoreLite implements IDataStoreLite {
             }
         } else {
             filePath = customFilePath;
+            openStore();
         }
     }
 
     /*
-    Method to remove the expired keys from KeyMap and DSCache
-    KeyMap - Stores the keys which have valid timeToLive property with their expiry time in milliseconds
-    KeyMap - < Key, [Expiry time in milliseconds]>
-    DSCache - Stores the key value pairs which have valid timeToLive Property specified
+    Open the DataStore file and build the key index by scanning the file once.
+    The channel stays open until the DataStore is closed.
+    Expiry of cached keys and compaction of the file run in the background.
      */
 
-    protected static void removeExpiredKeys() {
-        DSLog.info("Removing Expired Keys .....");
-        if(!keyMap.isEmpty()) {
-            for (Map.Entry<String, String> expKey : keyMap.entrySet()) {
-                DSLog.trace("key :" + expKey.getKey());
-                if (Long.parseLong(expKey.getValue()) < System.currentTimeMillis()) {
-                    keyMap.remove(expKey.getKey());
-                    DSCache.remove(expKey.getKey());
-                }
+    private void openStore() {
+        isFileSizeValid(filePath);
+        for (String field : options.getSecondaryIndexes()) {
+            secondaryIndexes.put(field, new DataStoreSecondaryIndex(field));
+        }
+        try {
+            fileLock = DataStoreFileLock.open(filePath);
+            fileLock.lockExclusive();
+            try {
+                dataChannel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ, StandardOpenOption.WRITE);
+                generation = DataStoreRecord.checkFileHeader(dataChannel);
+                Set<String> replayed = new HashSet<>();
+                index = DataStoreIndex.build(dataChannel, checkpointPath(), secondaryIndexes, replayed::add);
+                truncateIncompleteRecord();
+                buildSecondaryIndexes(replayed);
+                committedLength = index.indexedLength();
+            } finally {
+                fileLock.unlockExclusive();
             }
+            DSLog.trace("Indexed keys : " + index.size());
+            if (options.isMemoryMappedReads()) {
+                mappedFile = new DataStoreMappedFile(options.getMappedWindowSize());
+            }
+            writer = new DataStoreWriter(this, options);
+        } catch (IOException e) {
+            DSLog.error("Unable to open the DataStore file : " + filePath + " " + e.getMessage());
+            System.exit(1);
+        }
+        timer = new DataStoreLiteTimer(new File(filePath).getName(), key -> {
+            DSCache.remove(key);
+            expiredKeys.add(key);
+        });
+        for (Map.Entry<String, DataStoreIndex.RecordPointer> entry : index.entries()) {
+            // Time to live of the keys is kept in the index, so it carries over from before the restart
+            if (entry.getValue().expiresAt > 0) {
+                timer.schedule(entry.getKey(), entry.getValue().expiresAt);
+            }
+        }
+        backgroundExecutor = DataStoreLiteCompactor.newExecutor(filePath);
+        compactionTask = scheduleCompaction(this, options);
+        if (options.getCheckpointInterval() > 0) {
+            checkpointTask = scheduleCheckpoint(this, options);
+        }
+        metrics.start(options);
+    }
+
+    /*
+    Bring the secondary indexes up to date once the index is built. Indexes loaded from the checkpoint
+    only need the keys replayed after it, the others are built from every key in the index.
+     */
+
+    private void buildSecondaryIndexes(Set<String> replayed) {
+        List<DataStoreSecondaryIndex> loaded = new ArrayList<>();
+        List<DataStoreSecondaryIndex> unbuilt = new ArrayList<>();
+        for (DataStoreSecondaryIndex secondary : secondaryIndexes.values()) {
+            (secondary.isBuilt() ? loaded : unbuilt).add(secondary);
+        }
+        if (!loaded.isEmpty()) {
+            for (String key : replayed) {
+                updateSecondaryIndexes(key, loaded);
+            }
+        }
+        if (!unbuilt.isEmpty()) {
+            for (DataStoreSecondaryIndex secondary : unbuilt) {
+                secondary.clear();
+            }
+            for (Map.Entry<String, DataStoreIndex.RecordPointer> entry : index.entries()) {
+                updateSecondaryIndexes(entry.getKey(), unbuilt);
+            }
+            DSLog.info("Built secondary indexes of " + index.size() + " keys : " + filePath);
+        }
+        for (DataStoreSecondaryIndex secondary : unbuilt) {
+            secondary.markBuilt();
         }
+    }
+
+    /*
+    Index the current record of key in the secondary indexes, or remove the key if it is not in the index.
+    Called under indexLock, or while the DataStore is opened.
+     */
+
+    private void updateSecondaryIndexes(String key, Collection<DataStoreSecondaryIndex> secondaries) {
+        DataStoreIndex.RecordPointer pointer = index.get(key);
+        try {
+            updateSecondaryIndexes(key, pointer == null ? null : recordBuffer(pointer), secondaries);
+        } catch (IOException e) {
+            DSLog.error("Unable to index the value of : " + key + " " + e.getMessage());
+        }
+    }
+
+    /*
+    Index the value of a complete record of key, null if the key was deleted or expired.
+     */
 
+    private void updateSecondaryIndexes(String key, ByteBuffer record, Collection<DataStoreSecondaryIndex> secondaries)
+            throws IOException {
+        JSONObject value = record == null ? null : parseValue(DataStoreRecord.decode(record.duplicate()).value);
+        for (DataStoreSecondaryIndex secondary : secondaries) {
+            secondary.put(key, value);
+        }
     }
 
     /*
-    Method to get exclusive access for File to prevent another process from accessing the file.
+    Location of the index checkpoint of the DataStore file, see DataStoreIndexSnapshot.
      */
 
-    private void getFileAccess(FileReader dsFile) {
-        FileChannel fileChannel = null;
+    Path checkpointPath() {
+        return Paths.get(filePath + DataStoreIndexSnapshot.SUFFIX);
+    }
+
+    /*
+    Write a checkpoint of the index if records were written since the last one, called regularly in the background.
+    Holds compactionLock so the file cannot be swapped while the checkpoint is written.
+     */
+
+    void checkpoint() throws IOException {
+        compactionLock.lock();
         try {
-            fileChannel = new RandomAccessFile(String.valueOf(dsFile), "rw").getChannel();
-            LOCK = fileChannel.tryLock();
-            DSLog.trace(LOCK.isValid());
-        } catch (FileNotFoundException e) {
-            DSLog.error("Could not find the file :" + filePath);
-        } catch (OverlappingFileLockException | IOException e) {
-            DSLog.fatal("File Locked !!!");
+            if (!closed) {
+                writeCheckpoint();
+            }
+        } finally {
+            compactionLock.unlock();
         }
+    }
 
+    /*
+    The index is only copied under indexLock, the copy is written to disk after writes are let through again.
+     */
+
+    private void writeCheckpoint() throws IOException {
+        DataStoreIndexSnapshot snapshot;
+        indexLock.lock();
+        try {
+            if (index.indexedLength() == checkpointLength) {
+                return;
+            }
+            snapshot = DataStoreIndexSnapshot.of(index, secondaryIndexes.values(), dataChannel);
+        } finally {
+            indexLock.unlock();
+        }
+        snapshot.write(checkpointPath());
+        checkpointLength = snapshot.indexedLength();
+        DSLog.trace("Index checkpoint written up to offset : " + checkpointLength);
     }
 
     /*
-    Method to release File Lock after completing read/write operations.
+    Drop the incomplete record left behind by an interrupted write.
+    Must be called with exclusive write access, when no other process can be in the middle of a write.
+    The bytes after the index are read again under that access and only dropped if they are confirmed
+    to be an incomplete record at the end of the file. Anything else throws IOException and is kept,
+    so a record of another process is never cut off.
      */
 
-    private void releaseFileAccess() {
-        if (LOCK.isValid()) {
-            try {
-                LOCK.close();
-            } catch (IOException e) {
-                DSLog.error("Could'nt release the lock!!");
+    private void truncateIncompleteRecord() throws IOException {
+        long indexedLength = index.indexedLength();
+        if (indexedLength >= dataChannel.size()) {
+            return;
+        }
+        DataStoreRecordReader reader = new DataStoreRecordReader(dataChannel, indexedLength);
+        if (reader.next() || !reader.isIncomplete()) {
+            throw new IOException("Unindexed records at offset : " + indexedLength + ", not truncating the DataStore file");
+        }
+        DSLog.error("Truncating DataStore file to : " + indexedLength + " bytes");
+        dataChannel.truncate(indexedLength);
+    }
+
+    /*
+    Add the records written by other processes, or by other DataStores of the same file
+    in this process, to the index. Cached values of the replayed keys are dropped.
+    Runs before every group of writes, when a key is not found in the index,
+    while subscriptions wait for changes, and regularly in the background.
+     */
+
+    void catchUp() throws IOException {
+        indexLock.lock();
+        try {
+            if (!closed && dataChannel.size() > index.indexedLength()) {
+                index.replay(dataChannel, key -> {
+                    DSCache.remove(key);
+                    DataStoreIndex.RecordPointer pointer = index.get(key);
+                    if (pointer != null && pointer.expiresAt > 0) {
+                        timer.schedule(key, pointer.expiresAt);
+                    } else {
+                        timer.cancel(key);
+                    }
+                    if (!secondaryIndexes.isEmpty()) {
+                        updateSecondaryIndexes(key, secondaryIndexes.values());
+                    }
+                });
+                // Records of other processes were forced by them
+                commit(index.indexedLength());
             }
+        } finally {
+            indexLock.unlock();
+        }
+    }
+
+    /*
+    Let subscriptions read the file up to length.
+     */
+
+    private void commit(long length) {
+        synchronized (commits) {
+            committedLength = length;
+            commits.notifyAll();
         }
     }
 
@@ -157,81 +384,101 @@ public class DataStoreLite implements IDataStoreLite {
 
     /*
      Validate if the key length is within limit MAX_KEY_LENGTH
-     Return false if key length exceeded MAX_KEY_LENGTH.
+     Return false if the key is null or empty, or key length exceeded MAX_KEY_LENGTH.
+     A record with an empty key is not readable, DataStoreRecordReader stops at it as a corrupt record.
      */
 
     private boolean validateKey(String key) {
         boolean isValidKey = true;
-        if (key.length() > MAX_KEY_LENGTH) {
+        if (key == null || key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
             isValidKey = false;
         }
         return isValidKey;
     }
 
     /*
-     Validate if the JSONObject length is within limit MAX_JSON_OBJECT_SIZE
+     Validate if the serialized JSONObject length is within limit MAX_JSON_OBJECT_SIZE
      Return false if JSONObject length exceeded MAX_JSON_OBJECT_SIZE.
      */
 
-    private boolean validateJSOnObject(JSONObject object) {
-        String jsonString = object.toJSONString();
+    private boolean validateJSOnObject(byte[] json) {
         boolean result = true;
-        if (jsonString.getBytes().length > MAX_JSON_OBJECT_SIZE) {
+        if (json.length > MAX_JSON_OBJECT_SIZE) {
             result = false;
         }
         return result;
     }
 
     /*
-    openConnection()
-    Read Data from File and added to a HashMap
-    Data is read line by line
-    Each line is split into key value pairs and added to HashMap.
+    Read a single record from the DataStore file using its position in the index.
+    With memory mapped reads the record is copied from the mapped region without a system call.
      */
 
+    private DataStoreRecord readRecord(DataStoreIndex.RecordPointer pointer) throws IOException {
+        return DataStoreRecord.decode(recordBuffer(pointer));
+    }
 
-    private ConcurrentHashMap<String, String> openConnection() {
-        BufferedReader fileReader = null;
-        ConcurrentHashMap<String, String> fileMap = new ConcurrentHashMap<>();
-        if (nonEmptyFile() && isFileSizeValid(filePath)) {
-            try {
-
-                FileReader myFile = new FileReader(filePath);
-                getFileAccess(myFile);
-                fileReader = new BufferedReader(myFile);
-                String line;
-                while ((line = fileReader.readLine()) != null) {
-                    String[] parts = line.split(DEFAULT_DELIMITER);
-                    fileMap.put(parts[0], parts[1]);
-                }
-                releaseFileAccess();
-                fileReader.close();
+    /*
+    The bytes of a single record, copied from the mapped region with memory mapped reads.
+     */
 
-            } catch (FileNotFoundException e) {
-                e.printStackTrace();
-            } catch (IOException e) {
-                e.printStackTrace();
+    private ByteBuffer recordBuffer(DataStoreIndex.RecordPointer pointer) throws IOException {
+        if (mappedFile != null) {
+            return mappedFile.read(dataChannel, pointer.offset, pointer.length);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(pointer.length);
+        long position = pointer.offset;
+        while (buffer.hasRemaining()) {
+            int read = dataChannel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of DataStore file at offset : " + position);
             }
+            position += read;
         }
+        buffer.flip();
+        return buffer;
+    }
 
+    /*
+    Append a batch of records to the end of the DataStore file with a single gathering write.
+    Returns the positions of the appended records in the same order.
+     */
 
-        return fileMap;
+    private List<DataStoreIndex.RecordPointer> appendRecords(List<ByteBuffer> records) throws IOException {
+        List<DataStoreIndex.RecordPointer> pointers = new ArrayList<>(records.size());
+        long start = dataChannel.size();
+        long offset = start;
+        for (ByteBuffer record : records) {
+            pointers.add(new DataStoreIndex.RecordPointer(offset, record.remaining(), DataStoreRecord.expiresAt(record),
+                    DataStoreRecord.version(record)));
+            offset += record.remaining();
+        }
+        ByteBuffer[] buffers = records.toArray(new ByteBuffer[0]);
+        dataChannel.position(start);
+        while (buffers.length > 0 && buffers[buffers.length - 1].hasRemaining()) {
+            dataChannel.write(buffers);
+        }
+        metrics.bytesWritten.add(offset - start);
+        return pointers;
     }
 
     /*
     Method to check if the key has a valid timeToLive Property
+    The expiry time in the index is taken from the timeToLive and created time stored in the record.
+    Keys created without a timeToLive are always valid.
      */
 
-    private boolean isTimeToLiveValid(String key) {
-        boolean isValid = false;
-        long timeToLive;
-        timeToLive = Long.parseLong(getDataFromString(key, 1));
-        DSLog.trace("key:" + key + "timetToLive: " + timeToLive);
-        long timeElapsed = System.currentTimeMillis() - Long.parseLong(getDataFromString(key, 2));
-        if (timeElapsed < timeToLive) {
-            isValid = true;
-        }
-        return isValid;
+    private static boolean isTimeToLiveValid(DataStoreIndex.RecordPointer pointer) {
+        return pointer.expiresAt == 0 || System.currentTimeMillis() < pointer.expiresAt;
+    }
+
+    /*
+    Position of the record of key, null if the key is not available or its time to live has passed.
+     */
+
+    private DataStoreIndex.RecordPointer liveRecord(String key) {
+        DataStoreIndex.RecordPointer pointer = index.get(key);
+        return pointer != null && isTimeToLiveValid(pointer) ? pointer : null;
     }
     /*
     Method to verify if the File is empty or not.
@@ -267,10 +514,13 @@ public class DataStoreLite implements IDataStoreLite {
      *
      * @param key   String with maximum length of 32 Characters
      * @param value JSON Object with Maximum size of 16KB
+     * @return true if the key was created, false if it is already available or invalid
+     * @throws UncheckedIOException if the record could not be written
      */
 
-    public void create(String key, JSONObject value) {
-        create(key, value, 0);
+    @Override
+    public boolean create(String key, JSONObject value) {
+        return create(key, value, 0);
     }
 
     /**
@@ -280,10 +530,138 @@ public class DataStoreLite implements IDataStoreLite {
      *                   the key should be retained in the data store
      *                   for read and delete operations after which the key
      *                   gets expired.
+     * @return true if the key was created, false if it is already available or invalid
+     * @throws UncheckedIOException if the record could not be written
+     */
+
+    @Override
+    public boolean create(String key, JSONObject value, int timeToLive) {
+        long start = System.nanoTime();
+        try {
+            // Serialize once, the bytes are validated, written to the file and weigh the cached value
+            byte[] json = value.toJSONString().getBytes(StandardCharsets.UTF_8);
+            return createValue(key, json, timeToLive, true);
+        } finally {
+            metrics.create.recordSince(start);
+        }
+    }
+
+    /**
+     * Create Data from an already serialized JSON value, without parsing it.
+     * Only the size of the value is validated. The value is read back as a JSONObject by read,
+     * or as it was stored by get.
+     *
+     * @param key        String with maximum length of 32 Characters
+     * @param value      UTF-8 JSON text with Maximum size of 16KB, read from its position to its limit
+     * @param timeToLive Integer representing the number of seconds
+     *                   the key should be retained in the data store
+     * @return true if the key was created, false if it is already available or the value is invalid
+     * @throws UncheckedIOException if the record could not be written
+     */
+
+    @Override
+    public boolean put(String key, ByteBuffer value, int timeToLive) {
+        long start = System.nanoTime();
+        try {
+            byte[] json = new byte[value.remaining()];
+            value.duplicate().get(json);
+            return createValue(key, json, timeToLive, false);
+        } finally {
+            metrics.create.recordSince(start);
+        }
+    }
+
+    /*
+    Write a new record for key with a serialized value.
+    Values with a time to live are cached as a JSONObject if cache is true,
+    otherwise only their serialized form is cached in the off heap tier.
+    Returns true if the record was written.
+     */
+
+    private boolean createValue(String key, byte[] json, int timeToLive, boolean cache) {
+        return isValidRecord(key, json)
+                && writeValue(key, json, timeToLive, cache, DataStoreWriter.Operation.CREATE, 0);
+    }
+
+    /*
+    Write a record for key with a serialized value if the operation applies to the current record
+    of the key, see DataStoreWriter.Operation. Returns true if the record was written,
+    throws UncheckedIOException if it could not be written.
+     */
+
+    private boolean writeValue(String key, byte[] json, int timeToLive, boolean cache,
+                               DataStoreWriter.Operation operation, long expectedVersion) {
+        /*
+        If time to live property is a positive value, add the key value pairs to Data Store Chache
+        Schedule the key to expire at Created time + time to Live in milliseconds.
+        The timer removes the key from DSCache after expiry.
+         */
+
+        try {
+            /*
+            Write Data to file as a binary record
+            and add the position of the record to the index.
+             */
+
+            long createdMillis = System.currentTimeMillis();
+            ByteBuffer record = DataStoreRecord.encode(key.getBytes(StandardCharsets.UTF_8), json,
+                    DataStoreRecord.FIRST_VERSION, timeToLive, createdMillis,
+                    options.getCompression(), options.getCompressionThreshold());
+            keyLocks.writeLock(key);
+            try {
+                if (writer.write(DataStoreWriter.WriteRequest.write(operation, key, expectedVersion, record)).isEmpty()) {
+                    return false;
+                }
+                // The value and time to live of an earlier version are replaced
+                DSCache.remove(key);
+                if (timeToLive > 0) {
+                    if (cache) {
+                        cacheValue(key, json);
+                    } else {
+                        DSCache.putSerialized(key, json);
+                    }
+                    timer.schedule(key, createdMillis + timeToLive * 1000L);
+                } else {
+                    timer.cancel(key);
+                }
+                return true;
+            } finally {
+                keyLocks.writeUnlock(key);
+            }
+
+        } catch (IOException e) {
+            DSLog.error("Unable to write :" + key);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /*
+    Validate the key and the value of a new record, and check that the key is unique.
+    Return false and log the reason if the record is not valid.
+     */
+
+    private boolean isValidRecord(String key, byte[] json) {
+        if (!isValidValue(key, json)) {
+            return false;
+        }
+        if (liveRecord(key) != null) {
+            try {
+                throw new DataStoreLiteException("The key provided is already available: " + key);
+            } catch (DataStoreLiteException e) {
+                DSLog.error("Key should be unique");
+            }
+            DSLog.error("The key provided is already available: " + key);
+            return false;
+        }
+        return true;
+    }
+
+    /*
+    Validate the key and the value of a record.
+    Return false and log the reason if they are not valid.
      */
 
-    //@Override
-    public void create(String key, JSONObject value, int timeToLive) {
+    private boolean isValidValue(String key, byte[] json) {
         if (!validateKey(key)) {
             DSLog.error("The key is not valid : " + key);
             try {
@@ -291,72 +669,172 @@ public class DataStoreLite implements IDataStoreLite {
             } catch (DataStoreLiteException e) {
                 DSLog.error("Provide a valid key");
             }
-            return;
+            return false;
 
         }
-        if (!validateJSOnObject(value)) {
+        if (!validateJSOnObject(json)) {
+            String jsonString = new String(json, StandardCharsets.UTF_8);
             try {
-                throw new DataStoreLiteException("The JSON Object is not valid: " + value.toJSONString());
+                throw new DataStoreLiteException("The JSON Object is not valid: " + jsonString);
             } catch (DataStoreLiteException e) {
                DSLog.error("Provide a valid JSON Object");
             }
-            DSLog.error("The JSON Object is not valid: " + value.toJSONString());
-            return;
+            DSLog.error("The JSON Object is not valid: " + jsonString);
+            return false;
         }
-        ConcurrentHashMap<String, String> myMap = openConnection();
-        Set keys = myMap.keySet();
-        for (Object myKey : keys) {
-            if (key.equals(myKey)) {
-                try {
-                    throw new DataStoreLiteException("The key provided is already available: " + key);
-                } catch (DataStoreLiteException e) {
-                    DSLog.error("Key should be unique");
-                }
-                DSLog.error("The key provided is already available: " + key);
-                return;
-            }
+        return true;
+    }
+
+    /**
+     * Replace the value of a key which is available. The new value is written as a single record
+     * and the version of the key is incremented, see version.
+     *
+     * @param key        String with maximum length of 32 Characters
+     * @param value      JSON Object with Maximum size of 16KB
+     * @param timeToLive Integer representing the number of seconds the new value should be retained,
+     *                   replaces the time to live of the previous value
+     * @return true if the key was available and its value was replaced
+     * @throws UncheckedIOException if the record could not be written
+     */
+
+    @Override
+    public boolean update(String key, JSONObject value, int timeToLive) {
+        long start = System.nanoTime();
+        try {
+            byte[] json = value.toJSONString().getBytes(StandardCharsets.UTF_8);
+            return isValidValue(key, json)
+                    && writeValue(key, json, timeToLive, true, DataStoreWriter.Operation.UPDATE, 0);
+        } finally {
+            metrics.update.recordSince(start);
         }
-        /*
-        If time to live property is a positive value, add the key value pairs to Data Store Chache
-        Add key and time of Expiry (Created time + time to Live ) in milliseconds to keyMap.
-        This will be further utilised by dataStore to keep tack of keys in DSCache and
-        remove them after expiry.
-         */
+    }
+
+    /**
+     * Create Data unless the key is already available. Unlike create, an available key is not an error.
+     *
+     * @param key        String with maximum length of 32 Characters
+     * @param value      JSON Object with Maximum size of 16KB
+     * @param timeToLive Integer representing the number of seconds
+     *                   the key should be retained in the data store
+     * @return true if the key was created
+     * @throws UncheckedIOException if the record could not be written
+     */
 
+    @Override
+    public boolean putIfAbsent(String key, JSONObject value, int timeToLive) {
+        long start = System.nanoTime();
         try {
-            if (timeToLive > 0) {
-                DSCache.put(key, value.toJSONString());
-                keyMap.put(key, String.valueOf(System.currentTimeMillis() + timeToLive * 1000));
-            }
-            /*
-            Write Data to file in the format
-            <key><DEFAULT_DELIMITER><Value><DATA_DELIMITER><timeToLive><DATA_DELIMITER><Created time in milliseconds>
-             */
+            byte[] json = value.toJSONString().getBytes(StandardCharsets.UTF_8);
+            return isValidValue(key, json)
+                    && writeValue(key, json, timeToLive, true, DataStoreWriter.Operation.COMPARE_AND_SET, 0);
+        } finally {
+            metrics.create.recordSince(start);
+        }
+    }
 
-            BufferedWriter bWriter = new BufferedWriter(new FileWriter(filePath, true));
-            synchronized (this) {
-                bWriter.write(key);
-                bWriter.write(DEFAULT_DELIMITER);
-                bWriter.write(value.toJSONString());
-                bWriter.write(DATA_DELIMITER);
-                bWriter.write(String.valueOf(timeToLive));
-                bWriter.write(DATA_DELIMITER);
-                bWriter.write(String.valueOf(System.currentTimeMillis()));
-                bWriter.newLine();
-            }
-            bWriter.flush();
-            bWriter.close();
+    /**
+     * Replace the value of a key only if its version is still the expected version, so a value can be
+     * read, changed and written back without losing concurrent changes, also of other processes.
+     * Read the version before the value. If the write fails, read both again and retry.
+     *
+     * @param key             String with maximum length of 32 Characters
+     * @param expectedVersion Version returned by version, 0 to create the key only if it is not available
+     * @param value           JSON Object with Maximum size of 16KB
+     * @param timeToLive      Integer representing the number of seconds the new value should be retained
+     * @return true if the version matched and the value was written
+     * @throws UncheckedIOException if the record could not be written
+     */
 
-        } catch (IOException e) {
-            e.printStackTrace();
+    @Override
+    public boolean compareAndSet(String key, long expectedVersion, JSONObject value, int timeToLive) {
+        long start = System.nanoTime();
+        try {
+            byte[] json = value.toJSONString().getBytes(StandardCharsets.UTF_8);
+            return isValidValue(key, json) && writeValue(key, json, timeToLive, true,
+                    DataStoreWriter.Operation.COMPARE_AND_SET, expectedVersion);
+        } finally {
+            metrics.update.recordSince(start);
         }
-        closeConnection();
+    }
 
+    /**
+     * Version of the value of a key. A key starts at version 1 when it is created
+     * and every update or compareAndSet increments it.
+     *
+     * @param key String with maximum length of 32 Characters
+     * @return Version of the key, 0 if the key is not available
+     */
 
+    @Override
+    public long version(String key) {
+        catchUpIfMissing(Collections.singletonList(key));
+        DataStoreIndex.RecordPointer pointer = liveRecord(key);
+        return pointer == null ? 0 : pointer.version;
+    }
+
+    /**
+     * Create a batch of Data in the Key Value Data Store.
+     * The batch is validated once and written to the file with a single append
+     * in one group of the writer. Invalid records and keys which
+     * are already available are skipped.
+     *
+     * @param values     Key value pairs, keys with maximum length of 32 Characters
+     *                   and JSON Objects with Maximum size of 16KB
+     * @param timeToLive Integer representing the number of seconds
+     *                   the keys should be retained in the data store
+     * @return Number of keys which were created
+     * @throws UncheckedIOException if the batch could not be written
+     */
+
+    @Override
+    public int createAll(Map<String, JSONObject> values, int timeToLive) {
+        long start = System.nanoTime();
+        try {
+            long createdMillis = System.currentTimeMillis();
+            List<String> keys = new ArrayList<>(values.size());
+            List<ByteBuffer> records = new ArrayList<>(values.size());
+            Map<String, byte[]> cached = new HashMap<>();
+            for (Map.Entry<String, JSONObject> entry : values.entrySet()) {
+                byte[] json = entry.getValue().toJSONString().getBytes(StandardCharsets.UTF_8);
+                if (!isValidRecord(entry.getKey(), json)) {
+                    continue;
+                }
+                keys.add(entry.getKey());
+                records.add(DataStoreRecord.encode(entry.getKey().getBytes(StandardCharsets.UTF_8), json,
+                        DataStoreRecord.FIRST_VERSION, timeToLive, createdMillis,
+                        options.getCompression(), options.getCompressionThreshold()));
+                if (timeToLive > 0) {
+                    cached.put(entry.getKey(), json);
+                }
+            }
+            int[] stripes = keyLocks.stripesOf(keys);
+            keyLocks.writeLock(stripes);
+            try {
+                // Keys created by another writer since the batch was validated are skipped
+                List<String> created = writer.write(DataStoreWriter.WriteRequest.create(keys, records));
+                cached.keySet().retainAll(created);
+                if (!cached.isEmpty()) {
+                    long expiresAt = createdMillis + timeToLive * 1000L;
+                    for (Map.Entry<String, byte[]> entry : cached.entrySet()) {
+                        cacheValue(entry.getKey(), entry.getValue());
+                        timer.schedule(entry.getKey(), expiresAt);
+                    }
+                }
+                return created.size();
+            } catch (IOException e) {
+                DSLog.error("Unable to create batch of " + keys.size() + " keys");
+                throw new UncheckedIOException(e);
+            } finally {
+                keyLocks.writeUnlock(stripes);
+            }
+        } finally {
+            metrics.createAll.recordSince(start);
+        }
     }
 
     /**
      * Read the value from dataStore and return a JSONObject.
+     * The returned object is read only and shared with other readers of the key.
      *
      * @param key String for the required JSON Object
      * @return JSON Object from dataStore
@@ -365,135 +843,912 @@ public class DataStoreLite implements IDataStoreLite {
 
     @Override
     public JSONObject read(String key) {
-        if(!validateKey(key)){
-            DSLog.error("Key is Invalid :");
-            try {
-                throw new DataStoreLiteException(key);
-            } catch (DataStoreLiteException e) {
-                e.printStackTrace();
-            }
-        }
-        String returnString = "";
-        JSONObject jsonObject = new JSONObject();
-        JSONParser jsonParser = new JSONParser();
-        if(!DSCache.isEmpty()) {
-            returnString = DSCache.get(key); // Check for key in DSCache
-        }
-        if (returnString == null) {
-            // Read data from Datastore for the give key
-            ConcurrentHashMap<String, String> myMap = openConnection();
-            if(myMap.isEmpty()){
+        long start = System.nanoTime();
+        try {
+            if(!validateKey(key)){
+                DSLog.error("Key is Invalid :");
                 try {
-                    throw new DataStoreLiteException("Could not read data from dataStore");
+                    throw new DataStoreLiteException(key);
                 } catch (DataStoreLiteException e) {
                     e.printStackTrace();
                 }
-            }else {
-                returnString = myMap.get(key);
             }
+            catchUpIfMissing(Collections.singletonList(key));
+            JSONObject jsonObject = null;
+            // A key which is not in the index or has expired is not found without waiting for writers of its stripe
+            if (liveRecord(key) != null) {
+                keyLocks.readLock(key);
+                try {
+                    jsonObject = DSCache.get(key); // Check for key in DSCache, cached values are already parsed
+                    if (jsonObject != null) {
+                        metrics.cacheHits.increment();
+                    } else {
+                        metrics.cacheMisses.increment();
+                        // Read data from Datastore for the give key using its position in the index
+                        DataStoreIndex.RecordPointer pointer = liveRecord(key);
+                        if (pointer != null) {
+                            jsonObject = readThrough(key, pointer);
+                        }
+                    }
+                } catch (IOException e) {
+                    DSLog.error("Could not read data from dataStore");
+                } finally {
+                    keyLocks.readUnlock(key);
+                }
+            }
+
+            if (jsonObject == null) {
+                // Error message if key is not found.
+                DSLog.error("Could'nt find the key in Data Store");
+                jsonObject = new JSONObject();
+            }
+
+
+            return jsonObject;
+        } finally {
+            metrics.read.recordSince(start);
         }
-        DSLog.info(returnString);
+    }
 
-        if (returnString == null) {
-            // Error message if key is not found.
-            DSLog.error("Could'nt find the key in Data Store");
-        } else {
+    /**
+     * Read the value from dataStore as the stored UTF-8 JSON text, without parsing it.
+     * The returned buffer wraps the bytes read for the record, or the serialized value kept by
+     * the off heap tier of DSCache. Compressed values are decompressed.
+     * The parsed values in DSCache are not used.
+     *
+     * @param key String for the required value
+     * @return Read only buffer of the value, null if the key is not found in the dataStore.
+     */
+
+    @Override
+    public ByteBuffer get(String key) {
+        long start = System.nanoTime();
+        try {
+            catchUpIfMissing(Collections.singletonList(key));
+            if (liveRecord(key) == null) {
+                return null;
+            }
+            keyLocks.readLock(key);
             try {
-                // Parse JSON String to JSONObject and return.
-                String dataValue = getDataFromString(returnString, 0);
-                jsonObject = (JSONObject) jsonParser.parse(dataValue);
-            } catch (ParseException e) {
-                DSLog.error("Exception occurred while parsing JSON String");
+                DataStoreIndex.RecordPointer pointer = liveRecord(key);
+                if (pointer == null) {
+                    return null;
+                }
+                byte[] cached = DSCache.getSerialized(key);
+                if (cached != null) {
+                    return ByteBuffer.wrap(cached).asReadOnlyBuffer();
+                }
+                return DataStoreRecord.value(recordBuffer(pointer));
+            } catch (IOException e) {
+                DSLog.error("Could not read data from dataStore");
+                return null;
+            } finally {
+                keyLocks.readUnlock(key);
             }
+        } finally {
+            metrics.read.recordSince(start);
         }
-        closeConnection();
+    }
 
+    /**
+     * Read a batch of values from dataStore.
+     * Values which are not in DSCache are read from the file in file order and cached
+     * while the locks of all keys are held.
+     *
+     * @param keys Keys of the required JSON Objects
+     * @return Read only JSON Objects by key, in the order of the keys.
+     * Keys which are not found in the dataStore are left out.
+     */
 
-        return jsonObject;
+    @Override
+    public Map<String, JSONObject> readAll(Collection<String> keys) {
+        long start = System.nanoTime();
+        try {
+            Map<String, JSONObject> found = new HashMap<>();
+            List<Map.Entry<String, DataStoreIndex.RecordPointer>> uncached = new ArrayList<>();
+            catchUpIfMissing(keys);
+            int[] stripes = keyLocks.stripesOf(keys);
+            keyLocks.readLock(stripes);
+            try {
+                for (String key : keys) {
+                    DataStoreIndex.RecordPointer pointer = liveRecord(key);
+                    if (pointer == null) {
+                        continue;
+                    }
+                    JSONObject cachedValue = DSCache.get(key);
+                    if (cachedValue != null) {
+                        metrics.cacheHits.increment();
+                        found.put(key, cachedValue);
+                        continue;
+                    }
+                    metrics.cacheMisses.increment();
+                    uncached.add(new AbstractMap.SimpleImmutableEntry<>(key, pointer));
+                }
+                uncached.sort(Comparator.comparingLong(entry -> entry.getValue().offset));
+                for (Map.Entry<String, DataStoreIndex.RecordPointer> entry : uncached) {
+                    JSONObject value = readThrough(entry.getKey(), entry.getValue());
+                    if (value != null) {
+                        found.put(entry.getKey(), value);
+                    }
+                }
+            } catch (IOException e) {
+                DSLog.error("Could not read data from dataStore");
+            } finally {
+                keyLocks.readUnlock(stripes);
+            }
+            Map<String, JSONObject> result = new LinkedHashMap<>();
+            for (String key : keys) {
+                JSONObject value = found.get(key);
+                if (value == null) {
+                    DSLog.error("Could'nt find the key in Data Store : " + key);
+                    continue;
+                }
+                result.put(key, value);
+            }
+            return result;
+        } finally {
+            metrics.readAll.recordSince(start);
+        }
+    }
 
+    /*
+    Read a value from the file, parse it once and add it to DSCache.
+    Returns null if the value cannot be parsed.
+    Called with the read lock of the key, so a delete of the key cannot run meanwhile.
+    A record of another process replayed by catchUp meanwhile changes the index first
+    and then drops the key from DSCache, so a stale value is dropped again here.
+     */
+
+    private ImmutableJSONObject readThrough(String key, DataStoreIndex.RecordPointer pointer) throws IOException {
+        ImmutableJSONObject value = cacheValue(key, readRecord(pointer).value);
+        if (index.get(key) != pointer) {
+            DSCache.remove(key);
+        }
+        return value;
     }
 
     /*
-    Method to split the sting in format
-    <Value><DATA_DELIMITER><timeToLive><DATA_DELIMITER><Created time in milliseconds>
-    and retrieve individual values.
+    Parse a serialized value into a read only JSONObject and add it to DSCache.
+    Values are always parsed from the stored bytes, so cached values hold the same types as values read from the file.
+    Returns null if the value cannot be parsed.
      */
 
-    private String getDataFromString(String key, int position) {
-        String result;
-        String[] values = key.split(DATA_DELIMITER);
-        if (position < 3 && position >= 0) {
-            result = values[position];
-        } else {
-            result = "";
+    private ImmutableJSONObject cacheValue(String key, byte[] json) {
+        ImmutableJSONObject value = parseValue(json);
+        if (value != null) {
+            DSCache.put(key, value, json);
         }
-        return result;
+        return value;
+    }
+
+    /*
+    Parse a serialized value into a read only JSONObject.
+    Returns null if the value cannot be parsed.
+     */
+
+    static ImmutableJSONObject parseValue(byte[] json) {
+        try {
+            return new ImmutableJSONObject((JSONObject) new JSONParser().parse(new String(json, StandardCharsets.UTF_8)), json.length);
+        } catch (ParseException e) {
+            DSLog.error("Exception occurred while parsing JSON String");
+            return null;
+        }
+    }
+
+    /**
+     * Scan the keys from fromKey to toKey in key order.
+     * The stream is lazy, every value is read when the stream reaches its key, so a scan over
+     * any number of keys holds one value at a time. Keys created or deleted while the stream is consumed
+     * may or may not be seen. The stream ends when the DataStore is closed.
+     *
+     * @param fromKey First key of the scan (inclusive), null to start at the first key
+     * @param toKey   End of the scan (exclusive), null to scan to the last key
+     * @return Keys with their read only JSON Objects, empty if toKey is before fromKey
+     */
+
+    @Override
+    public Stream<Map.Entry<String, JSONObject>> scan(String fromKey, String toKey) {
+        if (fromKey != null && toKey != null && fromKey.compareTo(toKey) > 0) {
+            return Stream.empty();
+        }
+        try {
+            if (!closed && dataChannel.size() > index.indexedLength()) {
+                catchUp();
+            }
+        } catch (IOException e) {
+            DSLog.error("Could not read data from dataStore");
+        }
+        Iterator<String> keys = index.keys(fromKey, toKey).iterator();
+        Iterator<Map.Entry<String, JSONObject>> entries = new Iterator<Map.Entry<String, JSONObject>>() {
+            private Map.Entry<String, JSONObject> next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && !closed && keys.hasNext()) {
+                    String key = keys.next();
+                    JSONObject value = scanValue(key);
+                    if (value != null) {
+                        next = new AbstractMap.SimpleImmutableEntry<>(key, value);
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public Map.Entry<String, JSONObject> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Map.Entry<String, JSONObject> entry = next;
+                next = null;
+                return entry;
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(entries,
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Scan the keys which start with prefix in key order, see scan(String, String).
+     *
+     * @param prefix Prefix of the keys, an empty prefix scans every key
+     * @return Keys with their read only JSON Objects
+     */
+
+    @Override
+    public Stream<Map.Entry<String, JSONObject>> scanPrefix(String prefix) {
+        return scan(prefix, prefixEnd(prefix));
+    }
+
+    /**
+     * Find the keys whose value has the given value in a top level field, without scanning the values.
+     * The field must be declared with DataStoreLiteOptions.secondaryIndex, the index is kept up to date
+     * on every write, delete and expiry and checkpointed along with the key index.
+     * Strings, numbers and booleans are matched by their JSON text, so "42" does not match 42.
+     *
+     * @param field Top level field declared with DataStoreLiteOptions.secondaryIndex
+     * @param value String, number or boolean value of the field
+     * @return Keys whose value matches, empty if there are none or the field is not indexed
+     */
+
+    @Override
+    public Set<String> findBy(String field, Object value) {
+        DataStoreSecondaryIndex secondary = secondaryIndexes.get(field);
+        if (secondary == null) {
+            DSLog.error("No secondary index declared for the field : " + field);
+            return Collections.emptySet();
+        }
+        try {
+            if (!closed && dataChannel.size() > index.indexedLength()) {
+                catchUp();
+            }
+        } catch (IOException e) {
+            DSLog.error("Could not read data from dataStore");
+        }
+        Set<String> keys = secondary.keys(value);
+        // Expired keys stay in the index until purgeExpired removes them
+        keys.removeIf(key -> liveRecord(key) == null);
+        return keys;
+    }
+
+    /*
+    First key after every key which starts with prefix, null if there is none.
+     */
 
+    static String prefixEnd(String prefix) {
+        int end = prefix.length();
+        while (end > 0 && prefix.charAt(end - 1) == Character.MAX_VALUE) {
+            end--;
+        }
+        if (end == 0) {
+            return null;
+        }
+        return prefix.substring(0, end - 1) + (char) (prefix.charAt(end - 1) + 1);
+    }
+
+    /*
+    Value of a scanned key, null if the key was deleted or expired after the scan found it in the index.
+    Values which are not cached are read from the file without adding them to DSCache,
+    so a large scan does not push the keys which are read repeatedly out of the cache.
+     */
+
+    private JSONObject scanValue(String key) {
+        keyLocks.readLock(key);
+        try {
+            DataStoreIndex.RecordPointer pointer = liveRecord(key);
+            if (pointer == null) {
+                return null;
+            }
+            JSONObject value = DSCache.get(key);
+            if (value != null) {
+                return value;
+            }
+            return parseValue(readRecord(pointer).value);
+        } catch (IOException e) {
+            DSLog.error("Could not read data from dataStore : " + key);
+            return null;
+        } finally {
+            keyLocks.readUnlock(key);
+        }
+    }
+
+    /*
+    Catch up with other processes if any of the keys is not known, it may have been created by them.
+    Only the length of the file is checked unless it grew past the index, so a lookup of a key
+    which does not exist is answered from memory without waiting for the writer.
+     */
 
+    private void catchUpIfMissing(Collection<String> keys) {
+        for (String key : keys) {
+            if (!index.contains(key)) {
+                metrics.missingKeys.increment();
+                try {
+                    if (!closed && dataChannel.size() > index.indexedLength()) {
+                        metrics.missingKeyFileChecks.increment();
+                        catchUp();
+                    }
+                } catch (IOException e) {
+                    DSLog.error("Could not read data from dataStore");
+                }
+                return;
+            }
+        }
     }
 
     /**
      * Delete Data from DataStore for given key
      *
      * @param key Parameter to remove data. (String)
+     * @return true if the key was deleted, false if it is not found or its time to live has passed
+     * @throws UncheckedIOException if the delete could not be written
      */
 
     @Override
-    public void delete(String key) {
-        if(!validateKey(key)){
-            DSLog.error("Key is Invalid :");
+    public boolean delete(String key) {
+        long start = System.nanoTime();
+        try {
+            if(!validateKey(key)){
+                DSLog.error("Key is Invalid :");
+                try {
+                    throw new DataStoreLiteException(key);
+                } catch (DataStoreLiteException e) {
+                    DSLog.error("Invalid Key :"+key);
+                }
+                return false;
+            }
+            keyLocks.writeLock(key);
             try {
-                throw new DataStoreLiteException(key);
-            } catch (DataStoreLiteException e) {
-                DSLog.error("Invalid Key :"+key);
+                catchUpIfMissing(Collections.singletonList(key));
+                if (liveRecord(key) == null) {
+                    // Nothing to delete, the writer is not involved. Expired keys are left to the purge, like read.
+                    DSLog.error("Unable to delete :" + key);
+                    return false;
+                }
+                timer.cancel(key);
+                DSCache.remove(key);
+                // Append a tombstone, the deleted record is reclaimed by compaction.
+                writer.write(DataStoreWriter.WriteRequest.delete(Collections.singletonList(key)));
+                return true;
+            } catch (IOException ex) {
+                DSLog.error("Unable to delete :" + key);
+                throw new UncheckedIOException(ex);
+            } finally {
+                keyLocks.writeUnlock(key);
             }
+        } finally {
+            metrics.delete.recordSince(start);
         }
-        ConcurrentHashMap<String, String> myMap = openConnection();
-        if(myMap.isEmpty()){
+    }
+
+    /**
+     * Delete a batch of keys from DataStore.
+     * Tombstones for all keys are written with a single append in one group of the writer.
+     *
+     * @param keys Keys to remove
+     * @return Number of keys which were deleted, keys which are not found or expired are skipped
+     * @throws UncheckedIOException if the deletes could not be written
+     */
+
+    @Override
+    public int deleteAll(Collection<String> keys) {
+        long start = System.nanoTime();
+        try {
+            int[] stripes = keyLocks.stripesOf(keys);
+            keyLocks.writeLock(stripes);
             try {
-                throw new DataStoreLiteException("Could not Delete data from dataStore");
-            } catch (DataStoreLiteException e) {
-                DSLog.error("Unable to delete :"+key);
+                catchUpIfMissing(keys);
+                List<String> present = new ArrayList<>(keys.size());
+                for (String key : keys) {
+                    if (liveRecord(key) == null) {
+                        DSLog.error("Unable to delete :" + key);
+                        continue;
+                    }
+                    present.add(key);
+                    timer.cancel(key);
+                }
+                if (present.isEmpty()) {
+                    return 0;
+                }
+                DSCache.removeAll(present);
+                writer.write(DataStoreWriter.WriteRequest.delete(present));
+                return present.size();
+            } catch (IOException ex) {
+                DSLog.error("Unable to delete batch of " + keys.size() + " keys");
+                throw new UncheckedIOException(ex);
+            } finally {
+                keyLocks.writeUnlock(stripes);
+            }
+        } finally {
+            metrics.deleteAll.recordSince(start);
+        }
+    }
+
+    /**
+     * Subscribe to the creates, deletes and expiries of keys, in the order they were written to the DataStore file.
+     * Changes are read from the file, so a subscription can resume from the position of the last change it handled,
+     * also after a restart, and is delivered changes once they are durable. Changes written by other processes
+     * are delivered within a second. Expiries are delivered once the expired keys are purged in the background,
+     * at the latest after the compaction interval.
+     *
+     * @param fromPosition Position of a ChangeEvent to resume after, DataStoreSubscription.EARLIEST
+     *                     or DataStoreSubscription.LATEST
+     * @param listener     Receives the changes in batches of up to 1024 changes
+     * @return The running subscription, closed along with the DataStore
+     */
+
+    public DataStoreSubscription subscribe(long fromPosition, ChangeListener listener) {
+        return subscribe(fromPosition, DataStoreSubscription.DEFAULT_BATCH_SIZE, listener);
+    }
+
+    /**
+     * Subscribe to the changes of the DataStore, see subscribe(long, ChangeListener).
+     *
+     * @param fromPosition Position of a ChangeEvent to resume after, DataStoreSubscription.EARLIEST
+     *                     or DataStoreSubscription.LATEST
+     * @param maxBatchSize Maximum number of changes handed to the listener at once
+     * @param listener     Receives the changes in batches
+     * @return The running subscription, closed along with the DataStore
+     */
+
+    public DataStoreSubscription subscribe(long fromPosition, int maxBatchSize, ChangeListener listener) {
+        DataStoreSubscription subscription = new DataStoreSubscription(this, fromPosition, maxBatchSize, listener);
+        subscriptions.add(subscription);
+        if (closed) {
+            subscription.close();
+        }
+        subscription.start();
+        return subscription;
+    }
+
+    /**
+     * Close the DataStore.
+     * Queued writes are completed, the expiry timer and background compaction are stopped
+     * and the DataStore file is released. Operations on a closed DataStore fail.
+     */
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        compactionTask.cancel(false);
+        if (checkpointTask != null) {
+            checkpointTask.cancel(false);
+        }
+        // Not interrupted, an interrupt would close the file channel under a running compaction
+        backgroundExecutor.shutdown();
+        metrics.stop();
+        for (DataStoreSubscription subscription : subscriptions) {
+            subscription.close();
+        }
+        writer.close();
+        timer.close();
+        compactionLock.lock();
+        keyLocks.lockAll();
+        indexLock.lock();
+        try {
+            if (checkpointTask != null) {
+                writeCheckpoint();
             }
+        } catch (IOException e) {
+            DSLog.error("Unable to write the index checkpoint : " + checkpointPath() + " " + e.getMessage());
         }
-        keyMap.remove(key);
-        DSCache.remove(key);
-        if(!myMap.isEmpty()) {
-            myMap.remove(key);
+        try {
+            if (mappedFile != null) {
+                mappedFile.unmap();
+            }
+            dataChannel.close();
+            fileLock.close();
+        } catch (IOException e) {
+            DSLog.error("Unable to close the DataStore file : " + filePath);
+        } finally {
+            indexLock.unlock();
+            keyLocks.unlockAll();
+            compactionLock.unlock();
+        }
+        DSCache.clear();
+        DSLog.info("DataStore closed : " + filePath);
+    }
+
+    /*
+    Apply a group of queued writes, called by the writer thread.
+    The writer first takes the exclusive write lock shared with other processes and catches up
+    with the records they wrote. Writes whose operation does not apply to the current record of the key,
+    see DataStoreWriter.Operation, are skipped, taking earlier writes of the same group into account.
+    The writer assigns the version of every record it writes, one more than the version it replaces.
+    The group is appended with a single write and then forced. indexLock is held until the force
+    completes, so compaction cannot swap the file before it.
+    Callers hold the key locks of the keys in the group, so readers of those keys wait for the group.
+     */
+
+    void applyWrites(List<DataStoreWriter.WriteRequest> group, boolean force) throws IOException {
+        indexLock.lock();
+        try {
+            boolean written = false;
+            fileLock.lockExclusive();
             try {
-                BufferedWriter bWriter = new BufferedWriter(new FileWriter(filePath));
-                for (Map.Entry<String, String> mapElement : myMap.entrySet()) {
-                    String MYkey = mapElement.getKey();
-                    String value = mapElement.getValue();
-                    synchronized (this) {
-                        bWriter.write(MYkey);
-                        bWriter.write(DEFAULT_DELIMITER);
-                        bWriter.write(value);
-                        bWriter.newLine();
+                catchUp();
+                truncateIncompleteRecord();
+                Map<String, DataStoreIndex.RecordPointer> pending = new HashMap<>(); // null value for a delete
+                Map<String, ByteBuffer> pendingRecords = new HashMap<>(); // Only kept for the secondary indexes
+                List<ByteBuffer> records = new ArrayList<>();
+                long offset = dataChannel.size();
+                long deadBytes = 0;
+                for (DataStoreWriter.WriteRequest request : group) {
+                    for (int i = 0; i < request.keys.size(); i++) {
+                        String key = request.keys.get(i);
+                        DataStoreIndex.RecordPointer current = pending.containsKey(key) ? pending.get(key) : index.get(key);
+                        ByteBuffer record;
+                        if (request.operation == DataStoreWriter.Operation.EXPIRE) {
+                            if (current == null || isTimeToLiveValid(current)) {
+                                continue;
+                            }
+                            record = DataStoreRecord.encodeExpiry(key.getBytes(StandardCharsets.UTF_8));
+                            deadBytes += current.length + record.remaining();
+                            pending.put(key, null);
+                        } else if (request.operation == DataStoreWriter.Operation.DELETE) {
+                            if (current == null) {
+                                DSLog.error("Unable to delete :" + key);
+                                continue;
+                            }
+                            record = DataStoreRecord.encodeTombstone(key.getBytes(StandardCharsets.UTF_8));
+                            deadBytes += current.length + record.remaining();
+                            pending.put(key, null);
+                        } else {
+                            record = request.records.get(i).duplicate();
+                            DataStoreIndex.RecordPointer live = current != null && isTimeToLiveValid(current) ? current : null;
+                            if (!isWriteApplicable(request, key, live)) {
+                                continue;
+                            }
+                            if (offset + record.remaining() > MAX_FILE_SIZE) {
+                                DSLog.error("The file size exceeded the maximum allowable size :"
+                                        + MAX_FILE_SIZE + " bytes");
+                                continue;
+                            }
+                            if (current != null) {
+                                // Replaces an earlier version or a record whose time to live has passed
+                                deadBytes += current.length;
+                            }
+                            long version = live == null ? DataStoreRecord.FIRST_VERSION : live.version + 1;
+                            if (version != DataStoreRecord.version(record)) {
+                                DataStoreRecord.setVersion(record, version);
+                            }
+                            pending.put(key, new DataStoreIndex.RecordPointer(offset, record.remaining(),
+                                    DataStoreRecord.expiresAt(record), version));
+                            if (!secondaryIndexes.isEmpty()) {
+                                pendingRecords.put(key, record.duplicate());
+                            }
+                        }
+                        records.add(record);
+                        offset += record.remaining();
+                        request.applied.add(key);
                     }
                 }
-                bWriter.flush();
-                bWriter.close();
-            } catch (IOException ex) {
-                ex.printStackTrace();
+                if (!records.isEmpty()) {
+                    appendRecords(records);
+                    for (Map.Entry<String, DataStoreIndex.RecordPointer> entry : pending.entrySet()) {
+                        index.remove(entry.getKey());
+                        if (entry.getValue() != null) {
+                            index.put(entry.getKey(), entry.getValue());
+                        }
+                    }
+                    index.markDead(deadBytes);
+                    index.advanceTo(offset);
+                    if (!secondaryIndexes.isEmpty()) {
+                        for (Map.Entry<String, DataStoreIndex.RecordPointer> entry : pending.entrySet()) {
+                            String key = entry.getKey();
+                            updateSecondaryIndexes(key, entry.getValue() == null ? null : pendingRecords.get(key),
+                                    secondaryIndexes.values());
+                        }
+                    }
+                    written = true;
+                }
+            } finally {
+                fileLock.unlockExclusive();
+            }
+            if (written && force) {
+                dataChannel.force(false);
             }
-            closeConnection();
+            if (written) {
+                commit(index.indexedLength());
+            }
+        } finally {
+            indexLock.unlock();
         }
+    }
 
+    /*
+    Check the condition of a write against the live record of the key, null if the key is not available.
+     */
 
+    private static boolean isWriteApplicable(DataStoreWriter.WriteRequest request, String key,
+                                             DataStoreIndex.RecordPointer live) {
+        switch (request.operation) {
+            case CREATE:
+                if (live != null) {
+                    DSLog.error("The key provided is already available: " + key);
+                    return false;
+                }
+                return true;
+            case UPDATE:
+                if (live == null) {
+                    DSLog.error("Unable to update :" + key);
+                    return false;
+                }
+                return true;
+            default:
+                return (live == null ? 0 : live.version) == request.expectedVersion;
+        }
     }
+
     /*
-    If a valid lock is present, close the connection
+    Remove the keys whose time to live has passed, called regularly in the background before compaction.
+    An expiry tombstone is appended for every key, so subscriptions see the expiry and other processes
+    drop the key from their index. The expired records become dead bytes, so compaction drops them from the file.
+    Keys are purged in batches of PURGE_BATCH_SIZE through the writer, like deleteAll.
+    A key which was created again since it expired is kept.
      */
 
+    void purgeExpired() {
+        List<String> batch = new ArrayList<>(PURGE_BATCH_SIZE);
+        while (!closed && !expiredKeys.isEmpty()) {
+            batch.clear();
+            String key;
+            while (batch.size() < PURGE_BATCH_SIZE && (key = expiredKeys.poll()) != null) {
+                DataStoreIndex.RecordPointer pointer = index.get(key);
+                if (pointer != null && !isTimeToLiveValid(pointer)) {
+                    batch.add(key);
+                }
+            }
+            if (batch.isEmpty()) {
+                continue;
+            }
+            int[] stripes = keyLocks.stripesOf(batch);
+            keyLocks.writeLock(stripes);
+            try {
+                List<String> purged = writer.write(DataStoreWriter.WriteRequest.expire(new ArrayList<>(batch)));
+                DSCache.removeAll(purged);
+                metrics.expiredPurged.add(purged.size());
+            } catch (IOException e) {
+                DSLog.error("Unable to purge expired keys : " + e.getMessage());
+                return;
+            } finally {
+                keyLocks.writeUnlock(stripes);
+            }
+        }
+    }
+
+    /*
+    Compact the DataStore file if the ratio of dead bytes passed the compaction ratio.
+     */
 
-    private void closeConnection() {
+    void compactIfNeeded() throws IOException {
+        compactionLock.lock();
         try {
-            if (LOCK != null) {
-                LOCK.close();
+            if (closed) {
+                return;
             }
-        } catch (IOException e) {
-            DSLog.error("I/O Exception occurred.. ");
+            long fileSize = dataChannel.size();
+            if (fileSize >= options.getCompactionMinFileSize()
+                    && index.deadBytes() >= fileSize * options.getCompactionRatio()) {
+                if (!isSoleUser()) {
+                    DSLog.info("DataStore file is in use by another process, skipping compaction : " + filePath);
+                    return;
+                }
+                compact();
+            }
+        } finally {
+            compactionLock.unlock();
+        }
+    }
+
+    /*
+    Check whether this DataStore is the only user of the file before compaction copies it, so a file
+    shared with other processes or DataStores is not copied only to be dropped.
+    compact checks again before the swap, since the file may be opened while it is copied.
+     */
+
+    private boolean isSoleUser() throws IOException {
+        fileLock.lockExclusive();
+        try {
+            if (!fileLock.tryLockSole()) {
+                return false;
+            }
+            fileLock.releaseSole();
+            return true;
+        } finally {
+            fileLock.unlockExclusive();
+        }
+    }
+
+    /*
+    Compact the DataStore file by copying the live records to a new file and swapping the files atomically.
+    Live records are copied in the background without holding any lock, throttled to
+    compactionBytesPerSecond. All key locks and the exclusive write lock are only held at the end
+    to copy records written during compaction, add tombstones for records deleted during compaction,
+    and swap the files. The file is only swapped if no other process or DataStore uses it,
+    otherwise the compacted copy is dropped.
+     */
+
+    void compact() throws IOException {
+        Map<String, DataStoreIndex.RecordPointer> live = new HashMap<>();
+        for (Map.Entry<String, DataStoreIndex.RecordPointer> entry : index.entries()) {
+            live.put(entry.getKey(), entry.getValue());
+        }
+        DSLog.info("Compacting DataStore file : " + filePath);
+        Path compactPath = Paths.get(filePath + ".compact");
+        DataStoreIndex compacted = new DataStoreIndex();
+        Map<String, DataStoreIndex.RecordPointer> copied = new HashMap<>();
+        boolean swapped = false;
+        try (FileChannel compactChannel = FileChannel.open(compactPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            swapped = copyLiveRecords(live, copied, compactChannel)
+                    && swapIfSole(live, copied, compacted, compactChannel, compactPath);
+        } finally {
+            // Runs after the compacted file is closed, also if the copy failed
+            if (!swapped) {
+                Files.deleteIfExists(compactPath);
+            }
+        }
+        if (!swapped) {
+            return;
+        }
+        DSLog.info("Compacted DataStore file : " + filePath + " live keys : " + compacted.size());
+    }
+
+    /*
+    Copy the live records into the compacted file without holding any lock, throttled to
+    compactionBytesPerSecond. Returns false if the DataStore is closed in the meantime.
+     */
+
+    private boolean copyLiveRecords(Map<String, DataStoreIndex.RecordPointer> live,
+                                    Map<String, DataStoreIndex.RecordPointer> copied,
+                                    FileChannel compactChannel) throws IOException {
+        compactChannel.write(DataStoreRecord.fileHeader(generation + 1));
+        long startNanos = System.nanoTime();
+        long bytesCopied = 0;
+        for (Map.Entry<String, DataStoreIndex.RecordPointer> entry : live.entrySet()) {
+            if (closed) {
+                DSLog.info("DataStore closed, stopping compaction : " + filePath);
+                return false;
+            }
+            DataStoreIndex.RecordPointer pointer = entry.getValue();
+            // Expired records are copied until purgeExpired writes their expiry, so subscriptions see it
+            copied.put(entry.getKey(), copyRecord(pointer, compactChannel));
+            bytesCopied += pointer.length;
+            throttle(bytesCopied, startNanos, options.getCompactionBytesPerSecond());
+        }
+        return true;
+    }
+
+    /*
+    Take all key locks and exclusive access to the file and swap in the compacted file,
+    unless another process or DataStore opened the file while it was copied.
+    Returns false if the file was not swapped.
+     */
+
+    private boolean swapIfSole(Map<String, DataStoreIndex.RecordPointer> live, Map<String, DataStoreIndex.RecordPointer> copied,
+                               DataStoreIndex compacted, FileChannel compactChannel, Path compactPath) throws IOException {
+        keyLocks.lockAll();
+        indexLock.lock();
+        fileLock.lockExclusive();
+        try {
+            if (!fileLock.tryLockSole()) {
+                DSLog.info("DataStore file is in use by another process, skipping compaction : " + filePath);
+                return false;
+            }
+            try {
+                catchUp();
+                swapCompacted(live, copied, compacted, compactChannel, compactPath);
+                return true;
+            } finally {
+                fileLock.releaseSole();
+            }
+        } finally {
+            fileLock.unlockExclusive();
+            indexLock.unlock();
+            keyLocks.unlockAll();
+        }
+    }
+
+    /*
+    Final step of compaction, called with all key locks and exclusive access to the file.
+    Copy records written during compaction, add tombstones for records deleted during compaction
+    and replace the DataStore file with the compacted file.
+     */
+
+    private void swapCompacted(Map<String, DataStoreIndex.RecordPointer> live, Map<String, DataStoreIndex.RecordPointer> copied,
+                               DataStoreIndex compacted, FileChannel compactChannel, Path compactPath) throws IOException {
+        for (Map.Entry<String, DataStoreIndex.RecordPointer> entry : index.entries()) {
+            String key = entry.getKey();
+            if (entry.getValue() == live.get(key)) {
+                compacted.put(key, copied.get(key));
+            } else {
+                // Written during compaction
+                compacted.put(key, copyRecord(entry.getValue(), compactChannel));
+            }
+        }
+        for (Map.Entry<String, DataStoreIndex.RecordPointer> entry : copied.entrySet()) {
+            if (!compacted.contains(entry.getKey())) {
+                // Deleted during compaction
+                ByteBuffer tombstone = DataStoreRecord.encodeTombstone(entry.getKey().getBytes(StandardCharsets.UTF_8));
+                compacted.markDead(entry.getValue().length + tombstone.remaining());
+                compactChannel.write(tombstone);
+            }
+        }
+        compacted.advanceTo(compactChannel.position());
+        compactChannel.force(true);
+        long oldLength = dataChannel.size();
+        if (mappedFile != null) {
+            // Windows does not replace a file which is mapped
+            mappedFile.unmap();
+        }
+        dataChannel.close();
+        moveAtomically(compactPath, Paths.get(filePath));
+        dataChannel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index = compacted;
+        synchronized (commits) {
+            // Subscriptions reading the old file continue in the compacted file after its end
+            compactions.put(generation, new long[]{oldLength, compacted.indexedLength()});
+            generation = (generation + 1) & 0xFFFF;
+            committedLength = compacted.indexedLength();
+            commits.notifyAll();
+        }
+        // The checkpoint points into the old file, the next one is taken of the compacted file
+        Files.deleteIfExists(checkpointPath());
+        checkpointLength = -1;
+    }
+
+    /*
+    Copy a single record to the end of the target channel.
+    Returns the position of the record in the target channel.
+    A transfer which copies nothing means the record is past the end of the file.
+     */
+
+    private DataStoreIndex.RecordPointer copyRecord(DataStoreIndex.RecordPointer pointer, FileChannel target) throws IOException {
+        long offset = target.position();
+        long copied = 0;
+        while (copied < pointer.length) {
+            long transferred = dataChannel.transferTo(pointer.offset + copied, pointer.length - copied, target);
+            if (transferred <= 0) {
+                throw new EOFException("Unexpected end of DataStore file at offset : " + (pointer.offset + copied));
+            }
+            copied += transferred;
+        }
+        return new DataStoreIndex.RecordPointer(offset, pointer.length, pointer.expiresAt, pointer.version);
+    }
+
+    /*
+    Replace a file, used to swap in the compacted file and index checkpoints.
+    Falls back to a plain replace on file systems without atomic moves.
+     */
+
+    static void moveAtomically(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
         }
     }
 
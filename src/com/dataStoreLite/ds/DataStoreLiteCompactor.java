@@ -0,0 +1,83 @@
+package com.dataStoreLite.ds;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/*
+Schedule a repeating task to compact the DataStore file once the
+ratio of dead records passes the configured compaction ratio.
+Keys whose time to live has passed are purged from the index first, so their records are dropped as well.
+The same task keeps the index up to date with records written by other processes.
+A second task writes checkpoints of the index, so opening the DataStore does not scan the whole file.
+Every DataStore runs its tasks on a background thread of its own, so a throttled compaction of one
+DataStore or shard never holds up the background work of the others.
+A failed run is logged and the task runs again at the next interval.
+ */
+
+public class DataStoreLiteCompactor {
+
+    static final Logger DSLog = (Logger) LogManager.getLogger(LogManager.ROOT_LOGGER_NAME);
+    /*
+    Background thread of one DataStore, shut down when the DataStore is closed.
+     */
+
+    static ScheduledExecutorService newExecutor(String filePath) {
+        String name = "DataStoreLite-Compactor-" + new File(filePath).getName();
+        return Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    protected static ScheduledFuture<?> scheduleCompaction(DataStoreLite dataStore, DataStoreLiteOptions options) {
+        return dataStore.backgroundExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                dataStore.catchUp(); // Index the records written by other processes
+                dataStore.purgeExpired();
+                dataStore.compactIfNeeded();
+            } catch (IOException | RuntimeException e) {
+                // A task which throws is never run again, so every failure is caught
+                DSLog.error("Compaction failed for : " + dataStore.filePath + " " + e);
+            }
+        }, options.getCompactionInterval(), options.getCompactionInterval(), TimeUnit.SECONDS);
+    }
+
+    protected static ScheduledFuture<?> scheduleCheckpoint(DataStoreLite dataStore, DataStoreLiteOptions options) {
+        return dataStore.backgroundExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                dataStore.checkpoint();
+            } catch (IOException | RuntimeException e) {
+                DSLog.error("Index checkpoint failed for : " + dataStore.filePath + " " + e);
+            }
+        }, options.getCheckpointInterval(), options.getCheckpointInterval(), TimeUnit.SECONDS);
+    }
+
+    /*
+    Throttle compaction I/O.
+    Sleep until the number of bytes copied since startNanos fits within bytesPerSecond,
+    so that compaction does not starve foreground reads and writes.
+     */
+
+    static void throttle(long bytesCopied, long startNanos, long bytesPerSecond) {
+        if (bytesPerSecond <= 0) {
+            return;
+        }
+        long expectedNanos = bytesCopied * TimeUnit.SECONDS.toNanos(1) / bytesPerSecond;
+        long sleepNanos = expectedNanos - (System.nanoTime() - startNanos);
+        if (sleepNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(sleepNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.dataStoreLite.ds;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+Metrics registry of one DataStore.
+Operations record their latency in a LatencyHistogram and count cache hits, cache misses and
+bytes written in LongAdders, so recording stays cheap under load. File, cache and expiry figures
+are read from the DataStore when a snapshot is taken.
+The registry is registered as an MBean and, if configured, handed to a DataStoreMetricsExporter
+at a fixed interval. Both stop when the DataStore is closed.
+ */
+
+public class DataStoreLiteMetrics implements DataStoreLiteMetricsMBean {
+
+    static final Logger DSLog = (Logger) LogManager.getLogger(LogManager.ROOT_LOGGER_NAME);
+    static final String OBJECT_NAME = "com.dataStoreLite.ds:type=DataStoreLite,name=";
+    static final ScheduledExecutorService EXPORT_EXECUTOR = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "DataStoreLite-Metrics");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    final LatencyHistogram create = new LatencyHistogram();
+    final LatencyHistogram read = new LatencyHistogram();
+    final LatencyHistogram delete = new LatencyHistogram();
+    final LatencyHistogram update = new LatencyHistogram(); // update and compareAndSet
+    final LatencyHistogram createAll = new LatencyHistogram();
+    final LatencyHistogram readAll = new LatencyHistogram();
+    final LatencyHistogram deleteAll = new LatencyHistogram();
+    final LongAdder cacheHits = new LongAdder();
+    final LongAdder cacheMisses = new LongAdder();
+    final LongAdder bytesWritten = new LongAdder();
+    final LongAdder expiredPurged = new LongAdder(); // Expired keys removed from the index
+    final LongAdder missingKeys = new LongAdder(); // Lookups of keys which were not in the index
+    final LongAdder missingKeyFileChecks = new LongAdder(); // Of those, lookups which had to replay the file
+
+    private final DataStoreLite dataStore;
+    private ObjectName objectName;
+    private ScheduledFuture<?> exportTask;
+
+    DataStoreLiteMetrics(DataStoreLite dataStore) {
+        this.dataStore = dataStore;
+    }
+
+    /*
+    Register the MBean and schedule the exporter configured in the options.
+     */
+
+    void start(DataStoreLiteOptions options) {
+        if (options.isJmxEnabled()) {
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                ObjectName name = new ObjectName(OBJECT_NAME + ObjectName.quote(dataStore.filePath));
+                if (!server.isRegistered(name)) {
+                    server.registerMBean(this, name);
+                    objectName = name;
+                }
+            } catch (JMException e) {
+                DSLog.error("Unable to register DataStore metrics : " + e.getMessage());
+            }
+        }
+        DataStoreMetricsExporter exporter = options.getMetricsExporter();
+        if (exporter != null) {
+            int interval = options.getMetricsExportInterval();
+            exportTask = EXPORT_EXECUTOR.scheduleAtFixedRate(() -> {
+                try {
+                    exporter.export(dataStore.filePath, snapshot());
+                } catch (RuntimeException e) {
+                    DSLog.error("Metrics export failed for : " + dataStore.filePath + " " + e.getMessage());
+                }
+            }, interval, interval, TimeUnit.SECONDS);
+        }
+    }
+
+    void stop() {
+        if (exportTask != null) {
+            exportTask.cancel(false);
+        }
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                DSLog.error("Unable to unregister DataStore metrics : " + e.getMessage());
+            }
+        }
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1000.0;
+    }
+
+    private LatencyHistogram histogram(String operation) {
+        switch (operation) {
+            case "create":
+                return create;
+            case "read":
+                return read;
+            case "delete":
+                return delete;
+            case "update":
+                return update;
+            case "createAll":
+                return createAll;
+            case "readAll":
+                return readAll;
+            case "deleteAll":
+                return deleteAll;
+            default:
+                throw new IllegalArgumentException("Unknown operation : " + operation);
+        }
+    }
+
+    @Override
+    public long getCreateCount() {
+        return create.count();
+    }
+
+    @Override
+    public long getReadCount() {
+        return read.count();
+    }
+
+    @Override
+    public long getDeleteCount() {
+        return delete.count();
+    }
+
+    @Override
+    public double getCreateP99Micros() {
+        return micros(create.percentileNanos(99));
+    }
+
+    @Override
+    public double getReadP99Micros() {
+        return micros(read.percentileNanos(99));
+    }
+
+    @Override
+    public double getDeleteP99Micros() {
+        return micros(delete.percentileNanos(99));
+    }
+
+    @Override
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    @Override
+    public double getCacheHitRatio() {
+        long hits = cacheHits.sum();
+        long total = hits + cacheMisses.sum();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public int getCacheSize() {
+        return dataStore.DSCache.size();
+    }
+
+    @Override
+    public int getPendingExpiries() {
+        return dataStore.timer.size();
+    }
+
+    @Override
+    public long getExpiredKeys() {
+        return dataStore.timer.expiredCount();
+    }
+
+    @Override
+    public double getExpiryPassP99Micros() {
+        return micros(dataStore.timer.passDuration().percentileNanos(99));
+    }
+
+    @Override
+    public long getMissingKeyLookups() {
+        return missingKeys.sum();
+    }
+
+    @Override
+    public double getMissingKeyFileCheckRatio() {
+        long missing = missingKeys.sum();
+        return missing == 0 ? 0 : (double) missingKeyFileChecks.sum() / missing;
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    @Override
+    public long getFileSize() {
+        try {
+            return dataStore.dataChannel.size();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public double getFileUsedRatio() {
+        return (double) getFileSize() / DataStoreLite.MAX_FILE_SIZE;
+    }
+
+    @Override
+    public long getDeadBytes() {
+        return dataStore.index.deadBytes();
+    }
+
+    @Override
+    public double latencyPercentileMicros(String operation, double percentile) {
+        return micros(histogram(operation).percentileNanos(percentile));
+    }
+
+    @Override
+    public Map<String, Number> snapshot() {
+        Map<String, Number> metrics = new LinkedHashMap<>();
+        String[] operations = {"create", "read", "delete", "update", "createAll", "readAll", "deleteAll"};
+        for (String operation : operations) {
+            LatencyHistogram histogram = histogram(operation);
+            metrics.put(operation + ".count", histogram.count());
+            metrics.put(operation + ".meanMicros", micros((long) histogram.meanNanos()));
+            metrics.put(operation + ".p50Micros", micros(histogram.percentileNanos(50)));
+            metrics.put(operation + ".p99Micros", micros(histogram.percentileNanos(99)));
+            metrics.put(operation + ".p999Micros", micros(histogram.percentileNanos(99.9)));
+            metrics.put(operation + ".maxMicros", micros(histogram.maxNanos()));
+        }
+        metrics.put("cache.hits", getCacheHits());
+        metrics.put("cache.misses", getCacheMisses());
+        metrics.put("cache.hitRatio", getCacheHitRatio());
+        metrics.put("cache.size", getCacheSize());
+        metrics.put("cache.weightedSize", dataStore.DSCache.weightedSize());
+        metrics.put("cache.offHeapSize", dataStore.DSCache.offHeapSize());
+        metrics.put("cache.offHeapAllocatedBytes", dataStore.DSCache.offHeapAllocatedSize());
+        metrics.put("cache.offHeapHits", dataStore.DSCache.offHeapHits.sum());
+        metrics.put("lookup.missingKeys", getMissingKeyLookups());
+        metrics.put("lookup.missingKeyFileChecks", missingKeyFileChecks.sum());
+        metrics.put("lookup.missingKeyFileCheckRatio", getMissingKeyFileCheckRatio());
+        metrics.put("expiry.pending", getPendingExpiries());
+        metrics.put("expiry.expired", getExpiredKeys());
+        metrics.put("expiry.purged", expiredPurged.sum());
+        metrics.put("expiry.passP99Micros", getExpiryPassP99Micros());
+        metrics.put("expiry.passMaxMicros", micros(dataStore.timer.passDuration().maxNanos()));
+        metrics.put("file.bytesWritten", getBytesWritten());
+        metrics.put("file.size", getFileSize());
+        metrics.put("file.maxSize", DataStoreLite.MAX_FILE_SIZE);
+        metrics.put("file.usedRatio", getFileUsedRatio());
+        metrics.put("file.deadBytes", getDeadBytes());
+        metrics.put("index.keys", dataStore.index.size());
+        for (DataStoreSecondaryIndex secondary : dataStore.secondaryIndexes.values()) {
+            metrics.put("index.secondary." + secondary.field + ".keys", secondary.size());
+        }
+        return metrics;
+    }
+}
@@ -0,0 +1,66 @@
+package com.dataStoreLite.ds;
+
+import java.util.Map;
+
+/**
+ * Metrics of a DataStore, registered over JMX as
+ * com.dataStoreLite.ds:type=DataStoreLite,name=[DataStore file].
+ * Latencies are in microseconds.
+ */
+
+public interface DataStoreLiteMetricsMBean {
+
+    long getCreateCount();
+
+    long getReadCount();
+
+    long getDeleteCount();
+
+    double getCreateP99Micros();
+
+    double getReadP99Micros();
+
+    double getDeleteP99Micros();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    double getCacheHitRatio();
+
+    int getCacheSize();
+
+    long getMissingKeyLookups();
+
+    /**
+     * @return Share of the lookups of missing keys which read the DataStore file,
+     * because it had grown with records of other processes. The others are answered from memory.
+     */
+    double getMissingKeyFileCheckRatio();
+
+    int getPendingExpiries();
+
+    long getExpiredKeys();
+
+    double getExpiryPassP99Micros();
+
+    long getBytesWritten();
+
+    long getFileSize();
+
+    double getFileUsedRatio();
+
+    long getDeadBytes();
+
+    /**
+     * @param operation  create, read, delete, update, createAll, readAll or deleteAll
+     * @param percentile Percentile between 0 and 100
+     * @return Latency of the operation at the percentile in microseconds
+     */
+    double latencyPercentileMicros(String operation, double percentile);
+
+    /**
+     * @return Every metric by name, as handed to a DataStoreMetricsExporter
+     */
+    Map<String, Number> snapshot();
+}
@@ -0,0 +1,296 @@
+package com.dataStoreLite.ds;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/*
+Tuning options for a DataStore.
+Every option has a default, so only the values that differ from the defaults need to be set.
+ */
+
+public class DataStoreLiteOptions {
+    static final double DEFAULT_COMPACTION_RATIO = 0.5; // Compact when half of the file is dead records
+    static final long DEFAULT_COMPACTION_MIN_FILE_SIZE = 1024 * 1024; // Files smaller than 1MB are never compacted
+    static final long DEFAULT_COMPACTION_BYTES_PER_SECOND = 32 * 1024 * 1024; // Compaction I/O limit (32MB/s)
+    static final int DEFAULT_COMPACTION_INTERVAL = 30; // Seconds between checks for compaction
+    static final DurabilityMode DEFAULT_DURABILITY_MODE = DurabilityMode.GROUP_COMMIT;
+    static final int DEFAULT_GROUP_COMMIT_WINDOW = 0; // Milliseconds, only group writes which are already queued
+    static final long DEFAULT_MAPPED_WINDOW_SIZE = DataStoreLite.MAX_FILE_SIZE; // Size of a mapped region (1GB)
+    static final long DEFAULT_CACHE_SIZE = 64 * 1024 * 1024; // Size of the cached keys and values (64MB)
+    static final int DEFAULT_METRICS_EXPORT_INTERVAL = 60; // Seconds between metrics exports
+    static final int DEFAULT_CHECKPOINT_INTERVAL = 60; // Seconds between checkpoints of the index
+    static final int DEFAULT_COMPRESSION_THRESHOLD = 512; // Smaller values are not worth compressing (bytes)
+
+    private double compactionRatio = DEFAULT_COMPACTION_RATIO;
+    private long compactionMinFileSize = DEFAULT_COMPACTION_MIN_FILE_SIZE;
+    private long compactionBytesPerSecond = DEFAULT_COMPACTION_BYTES_PER_SECOND;
+    private int compactionInterval = DEFAULT_COMPACTION_INTERVAL;
+    private DurabilityMode durabilityMode = DEFAULT_DURABILITY_MODE;
+    private int groupCommitWindow = DEFAULT_GROUP_COMMIT_WINDOW;
+    private boolean memoryMappedReads = false;
+    private long mappedWindowSize = DEFAULT_MAPPED_WINDOW_SIZE;
+    private long cacheSize = DEFAULT_CACHE_SIZE;
+    private long offHeapCacheSize = 0;
+    private boolean jmxEnabled = true;
+    private DataStoreMetricsExporter metricsExporter;
+    private int metricsExportInterval = DEFAULT_METRICS_EXPORT_INTERVAL;
+    private int checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+    private CompressionCodec compression = CompressionCodec.NONE;
+    private int compressionThreshold = DEFAULT_COMPRESSION_THRESHOLD;
+    private final Set<String> secondaryIndexes = new LinkedHashSet<>();
+
+    /**
+     * @param compactionRatio Ratio of dead bytes (deleted records and tombstones) to file size
+     *                        above which the DataStore file is compacted. Between 0 and 1.
+     */
+    public DataStoreLiteOptions compactionRatio(double compactionRatio) {
+        if (compactionRatio <= 0 || compactionRatio > 1) {
+            throw new IllegalArgumentException("Compaction ratio must be between 0 and 1 : " + compactionRatio);
+        }
+        this.compactionRatio = compactionRatio;
+        return this;
+    }
+
+    /**
+     * @param compactionMinFileSize Minimum file size in bytes before compaction is considered.
+     */
+    public DataStoreLiteOptions compactionMinFileSize(long compactionMinFileSize) {
+        this.compactionMinFileSize = compactionMinFileSize;
+        return this;
+    }
+
+    /**
+     * @param compactionBytesPerSecond Maximum number of bytes copied per second while compacting.
+     *                                 0 disables throttling.
+     */
+    public DataStoreLiteOptions compactionBytesPerSecond(long compactionBytesPerSecond) {
+        if (compactionBytesPerSecond < 0) {
+            throw new IllegalArgumentException("Compaction rate must not be negative : " + compactionBytesPerSecond);
+        }
+        this.compactionBytesPerSecond = compactionBytesPerSecond;
+        return this;
+    }
+
+    /**
+     * @param compactionInterval Number of seconds between checks for compaction.
+     */
+    public DataStoreLiteOptions compactionInterval(int compactionInterval) {
+        if (compactionInterval <= 0) {
+            throw new IllegalArgumentException("Compaction interval must be positive : " + compactionInterval);
+        }
+        this.compactionInterval = compactionInterval;
+        return this;
+    }
+
+    /**
+     * @param durabilityMode When create and delete operations are forced to disk, see DurabilityMode.
+     */
+    public DataStoreLiteOptions durabilityMode(DurabilityMode durabilityMode) {
+        this.durabilityMode = durabilityMode;
+        return this;
+    }
+
+    /**
+     * @param groupCommitWindow Number of milliseconds the writer waits for more operations
+     *                          to join a group before forcing it to disk. Only used with GROUP_COMMIT.
+     */
+    public DataStoreLiteOptions groupCommitWindow(int groupCommitWindow) {
+        if (groupCommitWindow < 0) {
+            throw new IllegalArgumentException("Group commit window must not be negative : " + groupCommitWindow);
+        }
+        this.groupCommitWindow = groupCommitWindow;
+        return this;
+    }
+
+    /**
+     * @param memoryMappedReads Read records from a memory mapping of the DataStore file
+     *                          instead of a positioned read per record.
+     *                          Suited to read heavy workloads where the file is in the page cache.
+     */
+    public DataStoreLiteOptions memoryMappedReads(boolean memoryMappedReads) {
+        this.memoryMappedReads = memoryMappedReads;
+        return this;
+    }
+
+    /**
+     * @param mappedWindowSize Size in bytes of each mapped region of the DataStore file.
+     *                         At most MAX_FILE_SIZE (1GB).
+     */
+    public DataStoreLiteOptions mappedWindowSize(long mappedWindowSize) {
+        if (mappedWindowSize <= 0 || mappedWindowSize > DataStoreLite.MAX_FILE_SIZE) {
+            throw new IllegalArgumentException("Mapped window size must be between 1 and "
+                    + DataStoreLite.MAX_FILE_SIZE + " : " + mappedWindowSize);
+        }
+        this.mappedWindowSize = mappedWindowSize;
+        return this;
+    }
+
+    /**
+     * @param cacheSize Maximum size of the read cache, counted as the length of the cached keys and
+     *                  JSON strings. Recently read values stay in memory up to this size. 0 disables caching.
+     */
+    public DataStoreLiteOptions cacheSize(long cacheSize) {
+        if (cacheSize < 0) {
+            throw new IllegalArgumentException("Cache size must not be negative : " + cacheSize);
+        }
+        this.cacheSize = cacheSize;
+        return this;
+    }
+
+    /**
+     * @param offHeapCacheSize Size of direct memory for an off heap tier of the read cache, which keeps
+     *                         serialized values outside of the Java heap. 0 disables the tier.
+     *                         With a large off heap tier the cacheSize on the heap can be kept small.
+     *                         Counts against -XX:MaxDirectMemorySize.
+     */
+    public DataStoreLiteOptions offHeapCacheSize(long offHeapCacheSize) {
+        if (offHeapCacheSize < 0) {
+            throw new IllegalArgumentException("Off heap cache size must not be negative : " + offHeapCacheSize);
+        }
+        this.offHeapCacheSize = offHeapCacheSize;
+        return this;
+    }
+
+    /**
+     * @param jmxEnabled Register the metrics of the DataStore as an MBean, see DataStoreLiteMetricsMBean.
+     */
+    public DataStoreLiteOptions jmxEnabled(boolean jmxEnabled) {
+        this.jmxEnabled = jmxEnabled;
+        return this;
+    }
+
+    /**
+     * @param metricsExporter Exporter which receives the metrics of the DataStore
+     *                        every metricsExportInterval seconds. null disables exporting.
+     */
+    public DataStoreLiteOptions metricsExporter(DataStoreMetricsExporter metricsExporter) {
+        this.metricsExporter = metricsExporter;
+        return this;
+    }
+
+    /**
+     * @param metricsExportInterval Number of seconds between metrics exports.
+     */
+    public DataStoreLiteOptions metricsExportInterval(int metricsExportInterval) {
+        if (metricsExportInterval <= 0) {
+            throw new IllegalArgumentException("Metrics export interval must be positive : " + metricsExportInterval);
+        }
+        this.metricsExportInterval = metricsExportInterval;
+        return this;
+    }
+
+    /**
+     * @param checkpointInterval Number of seconds between checkpoints of the key index, which let the DataStore
+     *                           open without scanning the whole file. A checkpoint is also written on close.
+     *                           0 disables checkpoints.
+     */
+    public DataStoreLiteOptions checkpointInterval(int checkpointInterval) {
+        if (checkpointInterval < 0) {
+            throw new IllegalArgumentException("Checkpoint interval must not be negative : " + checkpointInterval);
+        }
+        this.checkpointInterval = checkpointInterval;
+        return this;
+    }
+
+    /**
+     * @param compression Codec used to compress the values of new records, see CompressionCodec.
+     *                    Records are decompressed on read whatever codec they were written with.
+     */
+    public DataStoreLiteOptions compression(CompressionCodec compression) {
+        this.compression = compression;
+        return this;
+    }
+
+    /**
+     * @param compressionThreshold Minimum size in bytes of a serialized value before it is compressed.
+     */
+    public DataStoreLiteOptions compressionThreshold(int compressionThreshold) {
+        if (compressionThreshold < 0) {
+            throw new IllegalArgumentException("Compression threshold must not be negative : " + compressionThreshold);
+        }
+        this.compressionThreshold = compressionThreshold;
+        return this;
+    }
+
+    /**
+     * @param field Top level field of the JSON values to index, so DataStoreLite.findBy can look up
+     *              the keys by its value. String, number and boolean values of the field are indexed.
+     *              Can be called once per field.
+     */
+    public DataStoreLiteOptions secondaryIndex(String field) {
+        if (field == null || field.isEmpty() || field.length() > DataStoreLite.MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("Invalid secondary index field : " + field);
+        }
+        secondaryIndexes.add(field);
+        return this;
+    }
+
+    double getCompactionRatio() {
+        return compactionRatio;
+    }
+
+    long getCompactionMinFileSize() {
+        return compactionMinFileSize;
+    }
+
+    long getCompactionBytesPerSecond() {
+        return compactionBytesPerSecond;
+    }
+
+    int getCompactionInterval() {
+        return compactionInterval;
+    }
+
+    DurabilityMode getDurabilityMode() {
+        return durabilityMode;
+    }
+
+    int getGroupCommitWindow() {
+        return groupCommitWindow;
+    }
+
+    boolean isMemoryMappedReads() {
+        return memoryMappedReads;
+    }
+
+    long getMappedWindowSize() {
+        return mappedWindowSize;
+    }
+
+    long getCacheSize() {
+        return cacheSize;
+    }
+
+    long getOffHeapCacheSize() {
+        return offHeapCacheSize;
+    }
+
+    boolean isJmxEnabled() {
+        return jmxEnabled;
+    }
+
+    DataStoreMetricsExporter getMetricsExporter() {
+        return metricsExporter;
+    }
+
+    int getMetricsExportInterval() {
+        return metricsExportInterval;
+    }
+
+    int getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    CompressionCodec getCompression() {
+        return compression;
+    }
+
+    int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    Set<String> getSecondaryIndexes() {
+        return Collections.unmodifiableSet(secondaryIndexes);
+    }
+}
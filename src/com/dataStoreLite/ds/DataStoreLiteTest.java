@@ -6,6 +6,13 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.json.simple.JSONObject;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
 
 public class DataStoreLiteTest {
   //  private static final Logger DSTLOG = LogManager.getLogger(LogManager.ROOT_LOGGER_NAME);
@@ -19,6 +26,7 @@ public class DataStoreLiteTest {
        // DSTest.createDataTest();
        // DSTest.readDataTest();
         DSTest.deleteDataTest();
+        DSTest.emptyKeyReopenTest();
     }
 
     private void createDataTest() {
@@ -61,4 +69,46 @@ public class DataStoreLiteTest {
         dsLite.delete("This key is Invalid");
 
     }
+
+    /*
+    An empty key is rejected by every write, so the file can be replayed without its index checkpoint.
+     */
+
+    @SuppressWarnings("unchecked")
+    private void emptyKeyReopenTest() {
+        File dsFile;
+        try {
+            dsFile = File.createTempFile("DSLiteEmptyKey", ".txt");
+        } catch (IOException e) {
+            DSTLOG.error("Unable to create test file : " + e.getMessage());
+            return;
+        }
+        JSONObject myJsonObject = new JSONObject();
+        myJsonObject.put("name01", "Name001");
+        Map<String, JSONObject> batch = new HashMap<>();
+        batch.put("", myJsonObject);
+        batch.put("DSL_EMPTY_1", myJsonObject);
+
+        DataStoreLite dsLite = new DataStoreLite(dsFile.getPath());
+        boolean rejected = !dsLite.create("", myJsonObject)
+                && !dsLite.put("", ByteBuffer.wrap("{}".getBytes(StandardCharsets.UTF_8)), 0)
+                && !dsLite.putIfAbsent("", myJsonObject, 0)
+                && !dsLite.compareAndSet("", 0, myJsonObject, 0)
+                && !dsLite.update("", myJsonObject, 0)
+                && dsLite.createAll(batch, 0) == 1;
+        dsLite.close();
+
+        // Replay the whole file, as after a compaction or from another process
+        new File(dsFile.getPath() + ".index").delete();
+        dsLite = new DataStoreLite(dsFile.getPath());
+        boolean replayed = "Name001".equals(dsLite.read("DSL_EMPTY_1").get("name01"));
+        dsLite.close();
+        dsFile.delete();
+        new File(dsFile.getPath() + ".index").delete();
+        if (rejected && replayed) {
+            DSTLOG.info("Empty key test passed");
+        } else {
+            DSTLOG.error("Empty key test failed, rejected : " + rejected + ", replayed : " + replayed);
+        }
+    }
 }
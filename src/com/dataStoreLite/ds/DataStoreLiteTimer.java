@@ -3,40 +3,325 @@ package com.dataStoreLite.ds;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.core.Logger;
 
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
 /*
-Schedule a repeating task to remove the expired keys from DSCache
-Shutdown the Executor Service after 30 times.
-
+Expire keys once their time to live has passed.
+Expiry times are kept in a hierarchical timing wheel. The first wheel has WHEEL_SIZE buckets of
+TICK_MILLIS each, every following wheel has buckets as wide as the whole previous wheel.
+Adding or cancelling a key is O(1). A bucket of a higher wheel is moved down once when its time comes,
+so every key is moved at most once per wheel.
+Only buckets which hold keys are queued, the timer thread sleeps until the next of them is due.
+One timer runs per DataStore until the DataStore is closed.
  */
 
-
 public class DataStoreLiteTimer {
 
     static final Logger DSLog = (Logger) LogManager.getLogger(LogManager.ROOT_LOGGER_NAME);
-    static final int TIME_INTERVAL = 5;
-    static final int SHUTDOWN_COUNTER = 30;
-   protected  static void scheduleTask (){
-       AtomicInteger counter = new AtomicInteger();
-        ScheduledExecutorService scheduledExecutorService =
-                Executors.newSingleThreadScheduledExecutor();
-       scheduledExecutorService.scheduleAtFixedRate(() -> {
-           DataStoreLite.removeExpiredKeys();
-           counter.getAndIncrement();
-           DSLog.trace(counter);
-           if(counter.get() == SHUTDOWN_COUNTER) {
-               scheduledExecutorService.shutdown();
-           }
+    static final long TICK_MILLIS = 1; // Precision of the first wheel
+    static final int WHEEL_SIZE = 64; // Buckets per wheel
+
+    /*
+    A key with its expiry time in milliseconds, linked into the bucket that holds it.
+     */
+
+    private static final class Entry {
+        final String key;
+        final long expiresAt;
+        volatile Bucket bucket;
+        Entry previous;
+        Entry next;
+
+        Entry(String key, long expiresAt) {
+            this.key = key;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /*
+    Keys which expire within one tick of a wheel, as a doubly linked list so a key is removed in O(1).
+    expiration is the start of the tick, or -1 while the bucket is not queued.
+     */
+
+    private static final class Bucket implements Delayed {
+        private final AtomicLong expiration = new AtomicLong(-1);
+        private final Entry head = new Entry(null, -1);
+
+        Bucket() {
+            head.previous = head;
+            head.next = head;
+        }
+
+        synchronized void add(Entry entry) {
+            entry.bucket = this;
+            entry.previous = head.previous;
+            entry.next = head;
+            head.previous.next = entry;
+            head.previous = entry;
+        }
+
+        synchronized void remove(Entry entry) {
+            if (entry.bucket != this) {
+                return;
+            }
+            entry.previous.next = entry.next;
+            entry.next.previous = entry.previous;
+            entry.previous = null;
+            entry.next = null;
+            entry.bucket = null;
+        }
+
+        /*
+        Remove every key from the bucket and hand it to action, which adds it to a lower wheel or expires it.
+         */
+
+        void flush(Consumer<Entry> action) {
+            Entry first;
+            synchronized (this) {
+                expiration.set(-1);
+                if (head.next == head) {
+                    return;
+                }
+                first = head.next;
+                head.previous.next = null;
+                head.previous = head;
+                head.next = head;
+                for (Entry entry = first; entry != null; entry = entry.next) {
+                    entry.bucket = null;
+                }
+            }
+            Entry entry = first;
+            while (entry != null) {
+                Entry next = entry.next;
+                entry.previous = null;
+                entry.next = null;
+                action.accept(entry);
+                entry = next;
+            }
+        }
 
-       },0,TIME_INTERVAL,TimeUnit.SECONDS);
+        /*
+        Returns true if the bucket has to be queued again.
+         */
 
+        boolean setExpiration(long expiresAt) {
+            return expiration.getAndSet(expiresAt) != expiresAt;
+        }
 
+        long getExpiration() {
+            return expiration.get();
+        }
 
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(getExpiration() - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(getExpiration(), ((Bucket) other).getExpiration());
+        }
+    }
+
+    /*
+    One level of the timing wheel. The next level is created when a key expires beyond this one.
+     */
+
+    private static final class Wheel {
+        private final long tickMillis;
+        private final long interval;
+        private final Bucket[] buckets;
+        private final DelayQueue<Bucket> queue;
+        private long currentTime;
+        private Wheel overflow;
+
+        Wheel(long tickMillis, long startTime, DelayQueue<Bucket> queue) {
+            this.tickMillis = tickMillis;
+            this.interval = tickMillis * WHEEL_SIZE;
+            this.queue = queue;
+            this.currentTime = startTime - (startTime % tickMillis);
+            buckets = new Bucket[WHEEL_SIZE];
+            for (int i = 0; i < WHEEL_SIZE; i++) {
+                buckets[i] = new Bucket();
+            }
+        }
+
+        /*
+        Returns false if the entry has already expired.
+         */
+
+        boolean add(Entry entry) {
+            if (entry.expiresAt < currentTime + tickMillis) {
+                return false;
+            }
+            if (entry.expiresAt < currentTime + interval) {
+                long tick = entry.expiresAt / tickMillis;
+                Bucket bucket = buckets[(int) (tick % WHEEL_SIZE)];
+                bucket.add(entry);
+                if (bucket.setExpiration(tick * tickMillis)) {
+                    queue.offer(bucket);
+                }
+                return true;
+            }
+            if (overflow == null) {
+                overflow = new Wheel(interval, currentTime, queue);
+            }
+            return overflow.add(entry);
+        }
+
+        void advanceClock(long time) {
+            if (time >= currentTime + tickMillis) {
+                currentTime = time - (time % tickMillis);
+                if (overflow != null) {
+                    overflow.advanceClock(currentTime);
+                }
+            }
+        }
+    }
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final DelayQueue<Bucket> queue = new DelayQueue<>();
+    private final ReentrantLock wheelLock = new ReentrantLock(); // Guards the wheels and their clocks
+    private final Wheel wheel;
+    private final Consumer<String> onExpire;
+    private final Thread timerThread;
+    private final LatencyHistogram passDuration = new LatencyHistogram();
+    private final LongAdder expiredCount = new LongAdder();
+    private volatile boolean closed;
+
+    /*
+    onExpire is called by the timer thread with every key whose time to live has passed.
+     */
+
+    DataStoreLiteTimer(String name, Consumer<String> onExpire) {
+        this.onExpire = onExpire;
+        wheel = new Wheel(TICK_MILLIS, System.currentTimeMillis(), queue);
+        timerThread = new Thread(this::run, "DataStoreLite-Timer-" + name);
+        timerThread.setDaemon(true);
+        timerThread.start();
     }
-}
 
+    /*
+    Expire key at expiresAt (milliseconds since the epoch), replacing any earlier expiry of the key.
+     */
 
+    void schedule(String key, long expiresAt) {
+        Entry entry = new Entry(key, expiresAt);
+        cancel(entries.put(key, entry));
+        wheelLock.lock();
+        try {
+            if (!wheel.add(entry)) {
+                expire(entry);
+            }
+        } finally {
+            wheelLock.unlock();
+        }
+    }
+
+    /*
+    Forget the expiry of key, used when the key is deleted.
+     */
+
+    void cancel(String key) {
+        cancel(entries.remove(key));
+    }
+
+    private static void cancel(Entry entry) {
+        if (entry == null) {
+            return;
+        }
+        Bucket bucket;
+        while ((bucket = entry.bucket) != null) {
+            bucket.remove(entry);
+        }
+    }
+
+    /*
+    Number of keys waiting to expire.
+     */
+
+    int size() {
+        return entries.size();
+    }
+
+    /*
+    Number of keys expired so far.
+     */
+
+    long expiredCount() {
+        return expiredCount.sum();
+    }
+
+    /*
+    Duration of every pass of the timer thread over the buckets which were due.
+     */
+
+    LatencyHistogram passDuration() {
+        return passDuration;
+    }
+
+    private void expire(Entry entry) {
+        // A key which was cancelled or scheduled again is skipped
+        if (entries.remove(entry.key, entry)) {
+            expiredCount.increment();
+            onExpire.accept(entry.key);
+        }
+    }
+
+    private void addOrExpire(Entry entry) {
+        if (entries.get(entry.key) != entry) {
+            return;
+        }
+        if (!wheel.add(entry)) {
+            expire(entry);
+        }
+    }
+
+    private void run() {
+        while (!closed) {
+            Bucket bucket;
+            try {
+                bucket = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            long start = System.nanoTime();
+            wheelLock.lock();
+            try {
+                while (bucket != null) {
+                    wheel.advanceClock(bucket.getExpiration());
+                    bucket.flush(this::addOrExpire);
+                    bucket = queue.poll();
+                }
+            } catch (RuntimeException e) {
+                DSLog.error("Unable to expire keys : " + e.getMessage());
+            } finally {
+                wheelLock.unlock();
+                passDuration.recordSince(start);
+            }
+        }
+    }
+
+    /*
+    Stop the timer thread. Keys which have not expired yet are dropped.
+     */
+
+    void close() {
+        closed = true;
+        timerThread.interrupt();
+        try {
+            timerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        entries.clear();
+        queue.clear();
+    }
+}
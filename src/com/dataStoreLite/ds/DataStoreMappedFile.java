@@ -0,0 +1,153 @@
+package com.dataStoreLite.ds;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+Read only memory mapping of the DataStore file, used when memory mapped reads are enabled.
+The file is mapped in windows of windowSize bytes. Every window overlaps the next one by the
+size of the biggest record, so a record never has to be assembled from two windows.
+Records appended after the file was mapped are mapped on the first read that needs them.
+
+Records are copied out of the windows, no view of a window is handed out. So the windows can be
+unmapped as soon as the file is replaced by compaction or closed, instead of when they are garbage
+collected: a live mapping keeps the disk space of a replaced file and, on Windows, makes moving
+the compacted file over it fail. Callers hold a key lock or indexLock while reading, and unmap
+holds all of them, so no read is in progress while the windows are unmapped.
+ */
+
+class DataStoreMappedFile {
+    static final int WINDOW_OVERLAP = DataStoreRecordReader.READ_BUFFER_SIZE; // Larger than the biggest record
+
+    private static final Unmapper UNMAPPER = Unmapper.find();
+
+    private final long windowSize;
+    private volatile MappedByteBuffer[] windows = new MappedByteBuffer[0];
+    private volatile long mappedLength; // Bytes of the file readable through the windows
+    private final List<MappedByteBuffer> replaced = new ArrayList<>(); // Windows mapped again, unmapped by unmap
+
+    DataStoreMappedFile(long windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    /*
+    Copy length bytes at offset in the file out of the mapped region, without a system call.
+     */
+
+    ByteBuffer read(FileChannel channel, long offset, int length) throws IOException {
+        if (offset + length > mappedLength) {
+            remap(channel, offset + length);
+        }
+        MappedByteBuffer[] current = windows;
+        int window = (int) (offset / windowSize);
+        int position = (int) (offset - window * windowSize);
+        ByteBuffer view = current[window].duplicate();
+        view.limit(position + length).position(position);
+        ByteBuffer copy = ByteBuffer.allocate(length);
+        copy.put(view);
+        copy.flip();
+        return copy;
+    }
+
+    /*
+    Map the file up to its current size.
+    Windows which are already mapped in full are kept, only the last window is mapped again.
+     */
+
+    private synchronized void remap(FileChannel channel, long required) throws IOException {
+        if (required <= mappedLength) {
+            return;
+        }
+        long size = channel.size();
+        if (required > size) {
+            throw new IOException("Record beyond the end of the DataStore file : " + required);
+        }
+        int count = (int) ((size + windowSize - 1) / windowSize);
+        MappedByteBuffer[] mapped = new MappedByteBuffer[count];
+        MappedByteBuffer[] current = windows;
+        for (int i = 0; i < count; i++) {
+            long start = i * windowSize;
+            long length = Math.min(windowSize + WINDOW_OVERLAP, size - start);
+            if (i < current.length && current[i].capacity() == length) {
+                mapped[i] = current[i];
+            } else {
+                if (i < current.length) {
+                    // Other readers may still be copying from it
+                    replaced.add(current[i]);
+                }
+                mapped[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            }
+        }
+        windows = mapped;
+        mappedLength = size;
+    }
+
+    /*
+    Unmap all windows, used before the DataStore file is replaced by compaction and when it is closed.
+    Must be called while no read is in progress, the next read maps the file again.
+     */
+
+    synchronized void unmap() {
+        MappedByteBuffer[] current = windows;
+        windows = new MappedByteBuffer[0];
+        mappedLength = 0;
+        for (MappedByteBuffer window : current) {
+            UNMAPPER.unmap(window);
+        }
+        for (MappedByteBuffer window : replaced) {
+            UNMAPPER.unmap(window);
+        }
+        replaced.clear();
+    }
+
+    /*
+    Releases a mapping without waiting for the garbage collector. The JDK has no public API for it,
+    sun.misc.Unsafe.invokeCleaner is used on Java 9 and later and the cleaner of the buffer on Java 8.
+    If neither is available the mappings are released when they are garbage collected.
+     */
+
+    private static final class Unmapper {
+        private final Object unsafe; // Java 9 and later
+        private final Method invokeCleaner;
+
+        private Unmapper(Object unsafe, Method invokeCleaner) {
+            this.unsafe = unsafe;
+            this.invokeCleaner = invokeCleaner;
+        }
+
+        static Unmapper find() {
+            try {
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                return new Unmapper(theUnsafe.get(null), invokeCleaner);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                return new Unmapper(null, null);
+            }
+        }
+
+        void unmap(MappedByteBuffer buffer) {
+            try {
+                if (invokeCleaner != null) {
+                    invokeCleaner.invoke(unsafe, buffer);
+                } else {
+                    Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                    cleanerMethod.setAccessible(true);
+                    Object cleaner = cleanerMethod.invoke(buffer);
+                    if (cleaner != null) {
+                        cleaner.getClass().getMethod("clean").invoke(cleaner);
+                    }
+                }
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                DataStoreLite.DSLog.error("Unable to unmap the DataStore file, it is released once garbage collected : " + e);
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.dataStoreLite.ds;
+
+import java.util.Map;
+
+/**
+ * Receives the metrics of a DataStore at the interval set with
+ * DataStoreLiteOptions.metricsExporter, to forward them to a monitoring system.
+ * Called from a shared background thread, so implementations should return quickly.
+ */
+
+public interface DataStoreMetricsExporter {
+
+    /**
+     * @param dataStore DataStore file the metrics belong to
+     * @param metrics   Every metric by name, see DataStoreLiteMetricsMBean.snapshot
+     */
+    void export(String dataStore, Map<String, Number> metrics);
+}
@@ -0,0 +1,119 @@
+package com.dataStoreLite.ds;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.Logger;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/*
+One shot migration of a text DataStore file to the binary record format.
+Text records are in the format
+Key[DEFAULT_DELIMITER]Value[DATA_DELIMITER]TimeToLive[DATA_DELIMITER]CreatedTimeInMilliSeconds
+and tombstones are in the format
+Key[DEFAULT_DELIMITER]
+Records are converted one line at a time and in order, so tombstones keep their meaning.
+
+Usage : DataStoreMigration <text file> [<binary file>]
+If no binary file is given, the text file is converted in place and kept as <text file>.bak
+ */
+
+public class DataStoreMigration {
+
+    static final Logger DSLog = (Logger) LogManager.getLogger(LogManager.ROOT_LOGGER_NAME);
+
+    public static void main(String[] args) {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage : DataStoreMigration <text file> [<binary file>]");
+            System.exit(1);
+        }
+        Path source = Paths.get(args[0]);
+        try {
+            if (args.length == 2) {
+                long records = migrate(source, Paths.get(args[1]));
+                DSLog.warn("Migrated " + records + " records to : " + args[1]);
+            } else {
+                Path target = Paths.get(args[0] + ".migrating");
+                long records = migrate(source, target);
+                Files.copy(source, Paths.get(args[0] + ".bak"), StandardCopyOption.REPLACE_EXISTING);
+                Files.move(target, source, StandardCopyOption.REPLACE_EXISTING);
+                DSLog.warn("Migrated " + records + " records in place, original kept as : " + args[0] + ".bak");
+            }
+        } catch (IOException e) {
+            DSLog.error("Migration failed : " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /*
+    Convert the text file at source to a binary DataStore file at target.
+    Returns the number of records written.
+     */
+
+    static long migrate(Path source, Path target) throws IOException {
+        long records = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(source.toFile()));
+             FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            channel.write(DataStoreRecord.fileHeader(0));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                ByteBuffer record = convert(line);
+                if (record == null) {
+                    DSLog.error("Skipping malformed record : " + line);
+                    continue;
+                }
+                while (record.hasRemaining()) {
+                    channel.write(record);
+                }
+                records++;
+            }
+            channel.force(true);
+        }
+        return records;
+    }
+
+    /*
+    Convert a single text record to a binary record.
+    TimeToLive and created time are split from the end of the line,
+    so values which contain DATA_DELIMITER are converted correctly.
+    Returns null for a malformed line.
+     */
+
+    static ByteBuffer convert(String line) {
+        int keyEnd = line.indexOf(DataStoreLite.DEFAULT_DELIMITER);
+        if (keyEnd <= 0) {
+            return null;
+        }
+        byte[] key = line.substring(0, keyEnd).getBytes(StandardCharsets.UTF_8);
+        String data = line.substring(keyEnd + DataStoreLite.DEFAULT_DELIMITER.length());
+        if (data.isEmpty()) {
+            return DataStoreRecord.encodeTombstone(key);
+        }
+        int createdStart = data.lastIndexOf(DataStoreLite.DATA_DELIMITER);
+        int timeToLiveStart = createdStart > 0 ? data.lastIndexOf(DataStoreLite.DATA_DELIMITER, createdStart - 1) : -1;
+        if (timeToLiveStart < 0) {
+            return null;
+        }
+        try {
+            int timeToLive = Integer.parseInt(data.substring(timeToLiveStart + DataStoreLite.DATA_DELIMITER.length(), createdStart));
+            long createdMillis = Long.parseLong(data.substring(createdStart + DataStoreLite.DATA_DELIMITER.length()));
+            byte[] value = data.substring(0, timeToLiveStart).getBytes(StandardCharsets.UTF_8);
+            return DataStoreRecord.encode(key, value, (byte) 0, timeToLive, createdMillis);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
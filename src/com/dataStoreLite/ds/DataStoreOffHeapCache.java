@@ -0,0 +1,403 @@
+package com.dataStoreLite.ds;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+Off heap tier of the read cache. Keeps serialized values outside of the Java heap, so a large cache
+does not add to the old generation the garbage collector has to walk.
+
+Memory is taken in slabs of direct memory, each slab is cut into chunks of one size class
+(powers of two from MIN_CHUNK_SIZE to MAX_CHUNK_SIZE). A chunk holds
+[key length short][value length int][key][value]
+and is put back on the free list of its size class as soon as its key is removed, replaced or expires.
+Keys are found through an open addressing table of primitive arrays, the key hash and the chunk handle
+(slab number and offset in the slab), so the cache holds no object per entry.
+Once the budget is taken, slabs are reclaimed in the order they were taken: the chunks still in the
+slab are dropped and the slab is cut for the size class that needs it.
+
+The cache is split into partitions by key hash, each with its own lock and an equal share of the budget.
+ */
+
+class DataStoreOffHeapCache {
+    static final int PARTITIONS = 16; // Picked by the top bits of the hash, the key tables use the low bits
+    static final int MIN_CHUNK_SIZE = 64;
+    static final int MAX_CHUNK_SIZE = 16 * 1024; // Holds the largest value with its key
+    static final int SIZE_CLASSES = Integer.numberOfTrailingZeros(MAX_CHUNK_SIZE / MIN_CHUNK_SIZE) + 1;
+    static final int MAX_SLAB_SIZE = 1024 * 1024;
+    static final int CHUNK_HEADER_SIZE = 6;
+
+    private final Partition[] partitions = new Partition[PARTITIONS];
+
+    DataStoreOffHeapCache(long maxSize) {
+        long partitionSize = maxSize / PARTITIONS;
+        // At least 64 slabs per partition where the budget allows, so every size class can get a slab
+        int slabSize = MAX_SLAB_SIZE;
+        while (slabSize > MAX_CHUNK_SIZE && (long) slabSize * 64 > partitionSize) {
+            slabSize /= 2;
+        }
+        for (int i = 0; i < PARTITIONS; i++) {
+            partitions[i] = new Partition(slabSize, (int) Math.max(1, partitionSize / slabSize));
+        }
+    }
+
+    /*
+    Hash of the UTF-8 bytes of a key, also used to find the key of a chunk while its slab is reclaimed.
+     */
+
+    static int hash(byte[] key) {
+        int hash = 0x811C9DC5;
+        for (byte b : key) {
+            hash = (hash ^ b) * 0x01000193;
+        }
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        hash *= 0xC2B2AE35;
+        return hash ^ (hash >>> 16);
+    }
+
+    private Partition partitionOf(int hash) {
+        return partitions[hash >>> 28 & (PARTITIONS - 1)];
+    }
+
+    static int sizeClassOf(int size) {
+        int sizeClass = 0;
+        while ((MIN_CHUNK_SIZE << sizeClass) < size) {
+            sizeClass++;
+        }
+        return sizeClass;
+    }
+
+    /*
+    Copy of the value of key, null if it is not cached.
+     */
+
+    byte[] get(String key) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(keyBytes);
+        return partitionOf(hash).get(hash, keyBytes);
+    }
+
+    /*
+    Cache the value of key, values too large for a chunk are not cached.
+     */
+
+    void put(String key, byte[] value) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(keyBytes);
+        partitionOf(hash).put(hash, keyBytes, value);
+    }
+
+    void remove(String key) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(keyBytes);
+        partitionOf(hash).remove(hash, keyBytes);
+    }
+
+    void clear() {
+        for (Partition partition : partitions) {
+            partition.clear();
+        }
+    }
+
+    /*
+    Number of cached entries.
+     */
+
+    int size() {
+        int size = 0;
+        for (Partition partition : partitions) {
+            size += partition.count();
+        }
+        return size;
+    }
+
+    /*
+    Direct memory taken by slabs.
+     */
+
+    long allocatedSize() {
+        long size = 0;
+        for (Partition partition : partitions) {
+            size += partition.allocatedSize();
+        }
+        return size;
+    }
+
+    /*
+    One partition of the cache.
+    hashes and handles form the key table, a handle of 0 marks a free slot and other handles are
+    (slab number << 32 | offset of the chunk) + 1. Entries are kept by linear probing
+    and removed by shifting the following entries back, so the table needs no deleted markers.
+     */
+
+    private static final class Partition {
+        private final int slabSize;
+        private final int maxSlabs;
+        private final List<ByteBuffer> slabs = new ArrayList<>();
+        private int[] slabClasses = new int[8]; // Size class of every slab
+        private int[] slabCarved = new int[8]; // Bytes of every slab cut into chunks so far
+        private final int[] carvingSlab = new int[SIZE_CLASSES]; // Slab which is being cut for a size class, -1 if none
+        private final long[][] freeChunks = new long[SIZE_CLASSES][]; // Stack of free chunk handles per size class
+        private final int[] freeCounts = new int[SIZE_CLASSES];
+        private int reclaimHand; // Next slab to reclaim once every slab is taken
+        private int[] hashes = new int[64];
+        private long[] handles = new long[64];
+        private int count;
+
+        Partition(int slabSize, int maxSlabs) {
+            this.slabSize = slabSize;
+            this.maxSlabs = maxSlabs;
+            Arrays.fill(carvingSlab, -1);
+            for (int i = 0; i < SIZE_CLASSES; i++) {
+                freeChunks[i] = new long[16];
+            }
+        }
+
+        synchronized byte[] get(int hash, byte[] key) {
+            int slot = find(hash, key);
+            if (slot < 0) {
+                return null;
+            }
+            long handle = handles[slot] - 1;
+            ByteBuffer slab = slabs.get(slabOf(handle));
+            int chunk = offsetOf(handle);
+            byte[] value = new byte[slab.getInt(chunk + 2)];
+            ByteBuffer view = slab.duplicate();
+            view.position(chunk + CHUNK_HEADER_SIZE + key.length);
+            view.get(value);
+            return value;
+        }
+
+        synchronized void put(int hash, byte[] key, byte[] value) {
+            int size = CHUNK_HEADER_SIZE + key.length + value.length;
+            int slot = find(hash, key);
+            if (slot >= 0) {
+                free(handles[slot] - 1);
+                removeAt(slot);
+            }
+            if (size > MAX_CHUNK_SIZE) {
+                return;
+            }
+            long handle = allocate(sizeClassOf(size));
+            ByteBuffer slab = slabs.get(slabOf(handle));
+            int chunk = offsetOf(handle);
+            slab.putShort(chunk, (short) key.length);
+            slab.putInt(chunk + 2, value.length);
+            ByteBuffer view = slab.duplicate();
+            view.position(chunk + CHUNK_HEADER_SIZE);
+            view.put(key);
+            view.put(value);
+            insert(hash, handle);
+        }
+
+        synchronized void remove(int hash, byte[] key) {
+            int slot = find(hash, key);
+            if (slot >= 0) {
+                free(handles[slot] - 1);
+                removeAt(slot);
+            }
+        }
+
+        synchronized void clear() {
+            slabs.clear();
+            Arrays.fill(carvingSlab, -1);
+            Arrays.fill(freeCounts, 0);
+            Arrays.fill(hashes, 0);
+            Arrays.fill(handles, 0);
+            reclaimHand = 0;
+            count = 0;
+        }
+
+        synchronized int count() {
+            return count;
+        }
+
+        synchronized long allocatedSize() {
+            return (long) slabs.size() * slabSize;
+        }
+
+        private static int slabOf(long handle) {
+            return (int) (handle >>> 32);
+        }
+
+        private static int offsetOf(long handle) {
+            return (int) handle;
+        }
+
+        /*
+        Take a chunk of the size class: a free chunk, the rest of the slab being cut for the class,
+        a new slab while the budget allows, or else the next slab to reclaim.
+         */
+
+        private long allocate(int sizeClass) {
+            if (freeCounts[sizeClass] > 0) {
+                return freeChunks[sizeClass][--freeCounts[sizeClass]];
+            }
+            int chunkSize = MIN_CHUNK_SIZE << sizeClass;
+            int slab = carvingSlab[sizeClass];
+            if (slab < 0 || slabCarved[slab] + chunkSize > slabSize) {
+                slab = slabs.size() < maxSlabs ? newSlab() : reclaim();
+                slabClasses[slab] = sizeClass;
+                slabCarved[slab] = 0;
+                carvingSlab[sizeClass] = slab;
+            }
+            int offset = slabCarved[slab];
+            slabCarved[slab] += chunkSize;
+            return ((long) slab << 32) | offset;
+        }
+
+        private int newSlab() {
+            int slab = slabs.size();
+            slabs.add(ByteBuffer.allocateDirect(slabSize));
+            if (slab == slabClasses.length) {
+                slabClasses = Arrays.copyOf(slabClasses, slab * 2);
+                slabCarved = Arrays.copyOf(slabCarved, slab * 2);
+            }
+            return slab;
+        }
+
+        /*
+        Drop every entry of the next slab in turn and hand the slab out again.
+         */
+
+        private int reclaim() {
+            int slab = reclaimHand;
+            reclaimHand = (reclaimHand + 1) % slabs.size();
+            int sizeClass = slabClasses[slab];
+            int chunkSize = MIN_CHUNK_SIZE << sizeClass;
+            ByteBuffer buffer = slabs.get(slab);
+            byte[] key = new byte[DataStoreLite.MAX_KEY_LENGTH * 4];
+            for (int chunk = 0; chunk + chunkSize <= slabCarved[slab]; chunk += chunkSize) {
+                int keyLength = buffer.getShort(chunk);
+                if (keyLength == 0) {
+                    continue;
+                }
+                if (keyLength > key.length) {
+                    key = new byte[keyLength];
+                }
+                ByteBuffer view = buffer.duplicate();
+                view.position(chunk + CHUNK_HEADER_SIZE);
+                view.get(key, 0, keyLength);
+                int slot = find(hash(Arrays.copyOf(key, keyLength)), ((long) slab << 32) | chunk);
+                if (slot >= 0) {
+                    removeAt(slot);
+                }
+            }
+            // Free chunks of the slab belong to its old size class
+            long[] free = freeChunks[sizeClass];
+            int kept = 0;
+            for (int i = 0; i < freeCounts[sizeClass]; i++) {
+                if (slabOf(free[i]) != slab) {
+                    free[kept++] = free[i];
+                }
+            }
+            freeCounts[sizeClass] = kept;
+            if (carvingSlab[sizeClass] == slab) {
+                carvingSlab[sizeClass] = -1;
+            }
+            return slab;
+        }
+
+        private void free(long handle) {
+            int slab = slabOf(handle);
+            int sizeClass = slabClasses[slab];
+            slabs.get(slab).putShort(offsetOf(handle), (short) 0);
+            if (freeCounts[sizeClass] == freeChunks[sizeClass].length) {
+                freeChunks[sizeClass] = Arrays.copyOf(freeChunks[sizeClass], freeCounts[sizeClass] * 2);
+            }
+            freeChunks[sizeClass][freeCounts[sizeClass]++] = handle;
+        }
+
+        private int find(int hash, byte[] key) {
+            int mask = handles.length - 1;
+            for (int slot = hash & mask; handles[slot] != 0; slot = (slot + 1) & mask) {
+                if (hashes[slot] == hash && keyEquals(handles[slot] - 1, key)) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        private int find(int hash, long handle) {
+            int mask = handles.length - 1;
+            for (int slot = hash & mask; handles[slot] != 0; slot = (slot + 1) & mask) {
+                if (handles[slot] == handle + 1) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        private boolean keyEquals(long handle, byte[] key) {
+            ByteBuffer slab = slabs.get(slabOf(handle));
+            int chunk = offsetOf(handle);
+            if (slab.getShort(chunk) != key.length) {
+                return false;
+            }
+            for (int i = 0; i < key.length; i++) {
+                if (slab.get(chunk + CHUNK_HEADER_SIZE + i) != key[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void insert(int hash, long handle) {
+            if ((count + 1) * 2 > handles.length) {
+                resize();
+            }
+            int mask = handles.length - 1;
+            int slot = hash & mask;
+            while (handles[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            hashes[slot] = hash;
+            handles[slot] = handle + 1;
+            count++;
+        }
+
+        private void removeAt(int slot) {
+            int mask = handles.length - 1;
+            int next = slot;
+            while (true) {
+                handles[slot] = 0;
+                int home;
+                do {
+                    next = (next + 1) & mask;
+                    if (handles[next] == 0) {
+                        count--;
+                        return;
+                    }
+                    home = hashes[next] & mask;
+                    // An entry stays if its home slot lies cyclically in (slot, next]
+                } while (slot <= next ? slot < home && home <= next : slot < home || home <= next);
+                hashes[slot] = hashes[next];
+                handles[slot] = handles[next];
+                slot = next;
+            }
+        }
+
+        private void resize() {
+            int[] oldHashes = hashes;
+            long[] oldHandles = handles;
+            hashes = new int[oldHashes.length * 2];
+            handles = new long[oldHandles.length * 2];
+            int mask = handles.length - 1;
+            for (int i = 0; i < oldHandles.length; i++) {
+                if (oldHandles[i] != 0) {
+                    int slot = oldHashes[i] & mask;
+                    while (handles[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    hashes[slot] = oldHashes[i];
+                    handles[slot] = oldHandles[i];
+                }
+            }
+        }
+    }
+}
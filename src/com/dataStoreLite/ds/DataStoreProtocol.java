@@ -0,0 +1,135 @@
+package com.dataStoreLite.ds;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/*
+Binary protocol between DataStoreClient and DataStoreServer.
+Every request and response is one frame, all numbers are big endian:
+[frame length int][request id int][type byte][payload]
+The frame length counts the bytes after it. The type of a request is its operation and the type of
+a response is its status. Responses carry the id of their request and can arrive in any order,
+so a client sends any number of requests without waiting for the responses (pipelining).
+
+Keys are [length short][UTF-8 bytes], values are [length int][UTF-8 JSON bytes].
+Request payloads:
+CREATE     [key][time to live int][value]      -> OK, or REJECTED if the key is available or invalid
+READ       [key]                               -> OK [value], or NOT_FOUND
+DELETE     [key]                               -> OK, or NOT_FOUND
+CREATE_ALL [time to live int][count int]{[key][value]} -> OK [count int] of the keys created, keys which are
+                                                  available or invalid are skipped, or REJECTED without creating
+                                                  any key if a value is not a JSON object
+READ_ALL   [count int]{[key]}                  -> OK [count int]{[key][value]} for the keys found
+DELETE_ALL [count int]{[key]}                  -> OK, or NOT_FOUND if some keys were not found, the others are deleted
+A request which could not run responds BUSY if the server is overloaded and ERROR [message as value]
+if it failed. A frame which cannot be a frame of the protocol closes the connection.
+ */
+
+final class DataStoreProtocol {
+    static final int LENGTH_SIZE = 4; // Frame length field
+    static final int HEADER_SIZE = LENGTH_SIZE + 4 + 1; // Frame length, request id and type
+    static final int MAX_FRAME_SIZE = 64 * 1024 * 1024; // Largest frame accepted by either side (64MB)
+
+    // Request types
+    static final byte CREATE = 1;
+    static final byte READ = 2;
+    static final byte DELETE = 3;
+    static final byte CREATE_ALL = 4;
+    static final byte READ_ALL = 5;
+    static final byte DELETE_ALL = 6;
+
+    // Response types
+    static final byte OK = 0;
+    static final byte NOT_FOUND = 1;
+    static final byte REJECTED = 2;
+    static final byte BUSY = 3;
+    static final byte ERROR = 4;
+
+    private DataStoreProtocol() {
+    }
+
+    /*
+    New frame with its header written, positioned at the start of a payload of payloadLength bytes.
+     */
+
+    static ByteBuffer frame(int requestId, byte type, int payloadLength) {
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + payloadLength);
+        frame.putInt(HEADER_SIZE - LENGTH_SIZE + payloadLength);
+        frame.putInt(requestId);
+        frame.put(type);
+        return frame;
+    }
+
+    /*
+    Frame without payload.
+     */
+
+    static ByteBuffer status(int requestId, byte type) {
+        ByteBuffer frame = frame(requestId, type, 0);
+        frame.flip();
+        return frame;
+    }
+
+    static ByteBuffer error(int requestId, String message) {
+        byte[] bytes = utf8(String.valueOf(message));
+        ByteBuffer frame = frame(requestId, ERROR, valueSize(bytes.length));
+        putValue(frame, bytes);
+        frame.flip();
+        return frame;
+    }
+
+    static byte[] utf8(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    static int keySize(byte[] key) {
+        return 2 + key.length;
+    }
+
+    static int valueSize(int length) {
+        return 4 + length;
+    }
+
+    static void putKey(ByteBuffer frame, byte[] key) {
+        frame.putShort((short) key.length);
+        frame.put(key);
+    }
+
+    static String getKey(ByteBuffer payload) {
+        byte[] key = new byte[payload.getShort() & 0xFFFF];
+        payload.get(key);
+        return new String(key, StandardCharsets.UTF_8);
+    }
+
+    static void putValue(ByteBuffer frame, byte[] value) {
+        frame.putInt(value.length);
+        frame.put(value);
+    }
+
+    static void putValue(ByteBuffer frame, ByteBuffer value) {
+        frame.putInt(value.remaining());
+        frame.put(value.duplicate());
+    }
+
+    /*
+    Value as a view of the payload, the payload is moved past it.
+     */
+
+    static ByteBuffer getValue(ByteBuffer payload) {
+        int length = payload.getInt();
+        if (length < 0 || length > payload.remaining()) {
+            throw new IllegalArgumentException("Invalid value length : " + length);
+        }
+        ByteBuffer value = payload.slice();
+        value.limit(length);
+        payload.position(payload.position() + length);
+        return value;
+    }
+
+    static byte[] getValueBytes(ByteBuffer payload) {
+        ByteBuffer value = getValue(payload);
+        byte[] bytes = new byte[value.remaining()];
+        value.get(bytes);
+        return bytes;
+    }
+}
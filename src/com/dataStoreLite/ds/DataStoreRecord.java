@@ -0,0 +1,307 @@
+package com.dataStoreLite.ds;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/*
+Binary format of the DataStore file.
+The file starts with a header
+[MAGIC int][FORMAT_VERSION short][generation short]
+where the generation counts the compactions of the file, followed by records in the format
+[CRC int][flags byte][key length short][value length int][timeToLive int][created time in milliseconds long][key][value]
+All numbers are big endian. The CRC covers every byte of the record after the CRC itself.
+A tombstone is a record with FLAG_TOMBSTONE set and no value. FLAG_EXPIRED is added to the
+tombstone of a key which was removed because its time to live had passed.
+A record with FLAG_VERSIONED set starts its value with [version long], the number of times the key
+was written since it was created. Records written before versions were added have FIRST_VERSION.
+A record with FLAG_DEFLATE set stores its value (after the version) as [uncompressed length int][deflated JSON],
+decode() returns the uncompressed value.
+ */
+
+final class DataStoreRecord {
+    static final int MAGIC = 0x44534C54; // "DSLT"
+    static final short FORMAT_VERSION = 1;
+    static final int FILE_HEADER_SIZE = 8;
+    static final int HEADER_SIZE = 23; // Size of the record header before the key
+    static final int CRC_SIZE = 4;
+    static final byte FLAG_TOMBSTONE = 1;
+    static final byte FLAG_DEFLATE = 2;
+    static final byte FLAG_EXPIRED = 4;
+    static final byte FLAG_VERSIONED = 8;
+    static final int VERSION_SIZE = 8;
+    static final long FIRST_VERSION = 1;
+    static final int COMPRESSION_LEVEL = Deflater.BEST_SPEED;
+
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(COMPRESSION_LEVEL));
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(Inflater::new);
+
+    final byte flags;
+    final byte[] value;
+    final int timeToLive; // Seconds
+    final long createdMillis;
+
+    private DataStoreRecord(byte flags, byte[] value, int timeToLive, long createdMillis) {
+        this.flags = flags;
+        this.value = value;
+        this.timeToLive = timeToLive;
+        this.createdMillis = createdMillis;
+    }
+
+    boolean isTombstone() {
+        return (flags & FLAG_TOMBSTONE) != 0;
+    }
+
+    /*
+    Encode a record. The returned buffer is ready to be written.
+     */
+
+    static ByteBuffer encode(byte[] key, byte[] value, byte flags, int timeToLive, long createdMillis) {
+        return encode(key, value, flags, FIRST_VERSION, timeToLive, createdMillis);
+    }
+
+    /*
+    Encode a record, the version is only stored if flags has FLAG_VERSIONED set.
+     */
+
+    static ByteBuffer encode(byte[] key, byte[] value, byte flags, long version, int timeToLive, long createdMillis) {
+        int versionSize = (flags & FLAG_VERSIONED) != 0 ? VERSION_SIZE : 0;
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + key.length + versionSize + value.length);
+        buffer.putInt(0);
+        buffer.put(flags);
+        buffer.putShort((short) key.length);
+        buffer.putInt(versionSize + value.length);
+        buffer.putInt(timeToLive);
+        buffer.putLong(createdMillis);
+        buffer.put(key);
+        if (versionSize > 0) {
+            buffer.putLong(version);
+        }
+        buffer.put(value);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), CRC_SIZE, buffer.capacity() - CRC_SIZE);
+        buffer.putInt(0, (int) crc.getValue());
+        buffer.flip();
+        return buffer;
+    }
+
+    /*
+    Time in milliseconds at which a record expires, 0 if it has no time to live.
+     */
+
+    static long expiresAt(int timeToLive, long createdMillis) {
+        return timeToLive > 0 ? createdMillis + timeToLive * 1000L : 0;
+    }
+
+    /*
+    Expiry time of an encoded record, see expiresAt(int, long).
+     */
+
+    static long expiresAt(ByteBuffer record) {
+        int start = record.position();
+        return expiresAt(record.getInt(start + 11), record.getLong(start + 15));
+    }
+
+    /*
+    Version of an encoded record.
+     */
+
+    static long version(ByteBuffer record) {
+        int start = record.position();
+        if ((record.get(start + 4) & FLAG_VERSIONED) == 0) {
+            return FIRST_VERSION;
+        }
+        return record.getLong(start + HEADER_SIZE + (record.getShort(start + 5) & 0xFFFF));
+    }
+
+    /*
+    Change the version of an encoded record with FLAG_VERSIONED set and update its CRC.
+     */
+
+    static void setVersion(ByteBuffer record, long version) {
+        int start = record.position();
+        record.putLong(start + HEADER_SIZE + (record.getShort(start + 5) & 0xFFFF), version);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), record.arrayOffset() + start + CRC_SIZE, record.remaining() - CRC_SIZE);
+        record.putInt(start, (int) crc.getValue());
+    }
+
+    /*
+    Encode a versioned record, compressing the value with codec if it is at least threshold bytes long.
+    The value is stored uncompressed if compressing does not make it smaller.
+     */
+
+    static ByteBuffer encode(byte[] key, byte[] value, long version, int timeToLive, long createdMillis,
+                             CompressionCodec codec, int threshold) {
+        if (codec == CompressionCodec.DEFLATE && value.length >= threshold) {
+            byte[] deflated = deflate(value);
+            if (deflated != null) {
+                return encode(key, deflated, (byte) (FLAG_DEFLATE | FLAG_VERSIONED), version, timeToLive, createdMillis);
+            }
+        }
+        return encode(key, value, FLAG_VERSIONED, version, timeToLive, createdMillis);
+    }
+
+    /*
+    Deflate a value into [uncompressed length int][deflated bytes].
+    Returns null if the result would not be smaller than the value.
+     */
+
+    private static byte[] deflate(byte[] value) {
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setInput(value);
+        deflater.finish();
+        byte[] deflated = new byte[value.length];
+        int length = 4;
+        while (!deflater.finished() && length < deflated.length) {
+            length += deflater.deflate(deflated, length, deflated.length - length);
+        }
+        if (!deflater.finished()) {
+            return null;
+        }
+        ByteBuffer.wrap(deflated).putInt(0, value.length);
+        return Arrays.copyOf(deflated, length);
+    }
+
+    static byte[] inflate(byte[] stored) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(stored);
+        int length = buffer.getInt();
+        if (length < 0 || length > DataStoreLite.MAX_JSON_OBJECT_SIZE) {
+            throw new IOException("Corrupt compressed record, invalid length : " + length);
+        }
+        byte[] value = new byte[length];
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setInput(stored, 4, stored.length - 4);
+        try {
+            int inflated = 0;
+            while (inflated < length && !inflater.finished()) {
+                int read = inflater.inflate(value, inflated, length - inflated);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflated += read;
+            }
+            if (inflated != length) {
+                throw new IOException("Corrupt compressed record, expected " + length + " bytes : " + inflated);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed record : " + e.getMessage());
+        }
+        return value;
+    }
+
+    static ByteBuffer encodeTombstone(byte[] key) {
+        return encode(key, new byte[0], FLAG_TOMBSTONE, 0, System.currentTimeMillis());
+    }
+
+    static ByteBuffer encodeExpiry(byte[] key) {
+        return encode(key, new byte[0], (byte) (FLAG_TOMBSTONE | FLAG_EXPIRED), 0, System.currentTimeMillis());
+    }
+
+    /*
+    Decode a complete record read from the DataStore file.
+    The record can be in a heap buffer or in a mapped region of the file.
+    Throws IOException if the CRC does not match.
+     */
+
+    static DataStoreRecord decode(ByteBuffer record) throws IOException {
+        checkCrc(record);
+        int start = record.position();
+        byte flags = record.get(start + 4);
+        int keyLength = record.getShort(start + 5) & 0xFFFF;
+        int valueLength = record.getInt(start + 7);
+        int timeToLive = record.getInt(start + 11);
+        long createdMillis = record.getLong(start + 15);
+        int valueStart = start + HEADER_SIZE + keyLength;
+        if ((flags & FLAG_VERSIONED) != 0) {
+            valueStart += VERSION_SIZE;
+            valueLength -= VERSION_SIZE;
+        }
+        byte[] value = new byte[valueLength];
+        record.position(valueStart);
+        record.get(value);
+        if ((flags & FLAG_DEFLATE) != 0) {
+            value = inflate(value);
+        }
+        return new DataStoreRecord(flags, value, timeToLive, createdMillis);
+    }
+
+    /*
+    Value of a complete record as a read only view of the record, without copying it.
+    A compressed value is decompressed into a new buffer.
+    Throws IOException if the CRC does not match.
+     */
+
+    static ByteBuffer value(ByteBuffer record) throws IOException {
+        checkCrc(record);
+        int start = record.position();
+        byte flags = record.get(start + 4);
+        int keyLength = record.getShort(start + 5) & 0xFFFF;
+        int valueLength = record.getInt(start + 7);
+        int valueStart = start + HEADER_SIZE + keyLength;
+        if ((flags & FLAG_VERSIONED) != 0) {
+            valueStart += VERSION_SIZE;
+            valueLength -= VERSION_SIZE;
+        }
+        ByteBuffer value = record.duplicate();
+        value.limit(valueStart + valueLength).position(valueStart);
+        if ((flags & FLAG_DEFLATE) != 0) {
+            byte[] stored = new byte[valueLength];
+            value.get(stored);
+            return ByteBuffer.wrap(inflate(stored)).asReadOnlyBuffer();
+        }
+        return value.slice().asReadOnlyBuffer();
+    }
+
+    private static void checkCrc(ByteBuffer record) throws IOException {
+        int start = record.position();
+        int storedCrc = record.getInt(start);
+        CRC32 crc = new CRC32();
+        ByteBuffer checked = record.duplicate();
+        checked.position(start + CRC_SIZE);
+        crc.update(checked);
+        if ((int) crc.getValue() != storedCrc) {
+            throw new IOException("Corrupt record, CRC mismatch");
+        }
+    }
+
+    static ByteBuffer fileHeader(int generation) {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putShort(FORMAT_VERSION);
+        header.putShort((short) generation);
+        header.flip();
+        return header;
+    }
+
+    /*
+    Verify the file header of the DataStore file.
+    An empty file gets a new header. Returns the generation of the file.
+    Throws IOException if the file is not in a supported format.
+     */
+
+    static int checkFileHeader(FileChannel channel) throws IOException {
+        if (channel.size() == 0) {
+            channel.write(fileHeader(0), 0);
+            return 0;
+        }
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        channel.read(header, 0);
+        header.flip();
+        if (header.remaining() < FILE_HEADER_SIZE || header.getInt() != MAGIC) {
+            throw new IOException("Not a binary DataStore file, use DataStoreMigration to convert text stores");
+        }
+        short version = header.getShort();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported DataStore file version : " + version);
+        }
+        return header.getShort() & 0xFFFF;
+    }
+}
@@ -0,0 +1,213 @@
+package com.dataStoreLite.ds;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/*
+Walks the records of a DataStore file in order.
+Records are read into a single reusable buffer and checked against their CRC.
+Nothing is decoded unless asked for, so a scan only allocates the keys it needs.
+The accessors describe the current record and stay valid until the next call to next().
+ */
+
+class DataStoreRecordReader {
+    static final int READ_BUFFER_SIZE = 64 * 1024; // Larger than the biggest record
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    private final CRC32 crc = new CRC32();
+    private long readPosition; // File offset of the next byte to read into the buffer
+    private boolean corrupt; // Stopped at a record which fails its checks and is followed by more data
+    private boolean incomplete; // Stopped at a record cut short by the end of the file
+
+    private long offset;
+    private int length;
+    private byte flags;
+    private int keyLength;
+    private int valueLength;
+    private int timeToLive;
+    private long createdMillis;
+    private int keyStart; // Position of the key in the buffer
+
+    DataStoreRecordReader(FileChannel channel, long startOffset) {
+        this.channel = channel;
+        this.readPosition = startOffset;
+        buffer.flip();
+    }
+
+    /*
+    Move to the next record.
+    Returns false at the end of the file or when the next record is incomplete or corrupt,
+    see isIncomplete and isCorrupt.
+     */
+
+    boolean next() throws IOException {
+        long recordOffset = position();
+        if (!fill(DataStoreRecord.HEADER_SIZE)) {
+            return false;
+        }
+        int start = buffer.position();
+        int storedCrc = buffer.getInt(start);
+        byte recordFlags = buffer.get(start + 4);
+        int recordKeyLength = buffer.getShort(start + 5) & 0xFFFF;
+        int recordValueLength = buffer.getInt(start + 7);
+        int recordLength = DataStoreRecord.HEADER_SIZE + recordKeyLength + recordValueLength;
+        if (recordKeyLength == 0 || recordValueLength < 0 || recordLength > READ_BUFFER_SIZE) {
+            stopAt(recordOffset);
+            return false;
+        }
+        if (!fill(recordLength)) {
+            return false;
+        }
+        start = buffer.position();
+        crc.reset();
+        crc.update(buffer.array(), start + DataStoreRecord.CRC_SIZE, recordLength - DataStoreRecord.CRC_SIZE);
+        if ((int) crc.getValue() != storedCrc) {
+            stopAt(recordOffset);
+            return false;
+        }
+        offset = recordOffset;
+        length = recordLength;
+        flags = recordFlags;
+        keyLength = recordKeyLength;
+        valueLength = recordValueLength;
+        timeToLive = buffer.getInt(start + 11);
+        createdMillis = buffer.getLong(start + 15);
+        keyStart = start + DataStoreRecord.HEADER_SIZE;
+        buffer.position(start + recordLength);
+        return true;
+    }
+
+    /*
+    Make sure at least size bytes are available in the buffer.
+    Returns false if the file ends before that. Bytes left over at the end of the file
+    belong to an incomplete record.
+     */
+
+    private boolean fill(int size) throws IOException {
+        if (buffer.remaining() >= size) {
+            return true;
+        }
+        buffer.compact();
+        int read;
+        while (buffer.position() < size && (read = channel.read(buffer, readPosition)) > 0) {
+            readPosition += read;
+        }
+        buffer.flip();
+        if (buffer.remaining() < size) {
+            incomplete = buffer.hasRemaining();
+            return false;
+        }
+        return true;
+    }
+
+    /*
+    Stop at a record which fails its checks. Only zeros from the record to the end of the file
+    are the space of an interrupted append, which some file systems leave behind after a crash.
+    Anything else is corruption, and the records after it must not be dropped.
+     */
+
+    private void stopAt(long recordOffset) throws IOException {
+        ByteBuffer tail = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        long position = recordOffset;
+        int read;
+        while ((read = channel.read(tail, position)) > 0) {
+            tail.flip();
+            while (tail.hasRemaining()) {
+                if (tail.get() != 0) {
+                    corrupt = true;
+                    return;
+                }
+            }
+            tail.clear();
+            position += read;
+        }
+        incomplete = true;
+    }
+
+    /*
+    File offset of the first byte after the last record returned by next().
+     */
+
+    long position() {
+        return readPosition - buffer.remaining();
+    }
+
+    /*
+    True if the scan stopped at a record which fails its CRC or header checks and is not the
+    end of the file. The record and everything after it are kept, it needs to be repaired.
+     */
+
+    boolean isCorrupt() {
+        return corrupt;
+    }
+
+    /*
+    True if the scan stopped at a record cut short by the end of the file, the remains of an
+    interrupted append or an append which is still being written by another process.
+     */
+
+    boolean isIncomplete() {
+        return incomplete;
+    }
+
+    long offset() {
+        return offset;
+    }
+
+    int length() {
+        return length;
+    }
+
+    boolean isTombstone() {
+        return (flags & DataStoreRecord.FLAG_TOMBSTONE) != 0;
+    }
+
+    boolean isExpiry() {
+        return (flags & DataStoreRecord.FLAG_EXPIRED) != 0;
+    }
+
+    boolean isCompressed() {
+        return (flags & DataStoreRecord.FLAG_DEFLATE) != 0;
+    }
+
+    /*
+    Version of the current record, see DataStoreRecord.
+     */
+
+    long version() {
+        if ((flags & DataStoreRecord.FLAG_VERSIONED) == 0) {
+            return DataStoreRecord.FIRST_VERSION;
+        }
+        return buffer.getLong(keyStart + keyLength);
+    }
+
+    int timeToLive() {
+        return timeToLive;
+    }
+
+    long createdMillis() {
+        return createdMillis;
+    }
+
+    String key() {
+        return new String(buffer.array(), keyStart, keyLength, StandardCharsets.UTF_8);
+    }
+
+    /*
+    Read only view of the value bytes of the current record, after its version.
+     */
+
+    ByteBuffer value() {
+        int valueStart = keyStart + keyLength;
+        if ((flags & DataStoreRecord.FLAG_VERSIONED) != 0) {
+            valueStart += DataStoreRecord.VERSION_SIZE;
+        }
+        ByteBuffer value = buffer.duplicate();
+        value.limit(keyStart + keyLength + valueLength).position(valueStart);
+        return value.slice().asReadOnlyBuffer();
+    }
+}
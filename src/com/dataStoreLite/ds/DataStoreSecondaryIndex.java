@@ -0,0 +1,121 @@
+package com.dataStoreLite.ds;
+
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+Index of the keys of a DataStore by the value of one top level field of their JSON values,
+declared with DataStoreLiteOptions.secondaryIndex.
+Strings, numbers and booleans are indexed by their JSON text, so "42" and 42 are different values.
+Keys whose value lacks the field, or has an object, array or null in it, are not indexed.
+The index is updated along with the key index, under indexLock, and checkpointed with it.
+ */
+
+class DataStoreSecondaryIndex {
+    final String field;
+    private final ConcurrentHashMap<String, Set<String>> keysByValue = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, String> valueByKey = new ConcurrentHashMap<>();
+    private volatile boolean built; // False until loaded from a checkpoint or built from the file
+
+    DataStoreSecondaryIndex(String field) {
+        this.field = field;
+    }
+
+    /*
+    JSON text of an indexed field value, null if the value is not indexed.
+     */
+
+    static String indexValue(Object value) {
+        if (value instanceof String || value instanceof Number || value instanceof Boolean) {
+            return JSONValue.toJSONString(value);
+        }
+        return null;
+    }
+
+    /*
+    Index key by the field of its value, a null value only removes the key.
+     */
+
+    void put(String key, JSONObject value) {
+        String indexed = value == null ? null : indexValue(value.get(field));
+        if (indexed == null) {
+            remove(key);
+        } else {
+            put(key, indexed);
+        }
+    }
+
+    void put(String key, String indexed) {
+        String previous = valueByKey.put(key, indexed);
+        if (indexed.equals(previous)) {
+            return;
+        }
+        if (previous != null) {
+            removeKey(previous, key);
+        }
+        keysByValue.compute(indexed, (value, keys) -> {
+            if (keys == null) {
+                keys = ConcurrentHashMap.newKeySet();
+            }
+            keys.add(key);
+            return keys;
+        });
+    }
+
+    void remove(String key) {
+        String previous = valueByKey.remove(key);
+        if (previous != null) {
+            removeKey(previous, key);
+        }
+    }
+
+    private void removeKey(String indexed, String key) {
+        keysByValue.computeIfPresent(indexed, (value, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    /*
+    Keys whose field has the value, a copy.
+     */
+
+    Set<String> keys(Object value) {
+        String indexed = indexValue(value);
+        Set<String> keys = indexed == null ? null : keysByValue.get(indexed);
+        return keys == null ? Collections.<String>emptySet() : new HashSet<>(keys);
+    }
+
+    /*
+    Copy of the indexed value of every key, for a checkpoint.
+     */
+
+    List<Map.Entry<String, String>> entries() {
+        return new ArrayList<>(valueByKey.entrySet());
+    }
+
+    void clear() {
+        keysByValue.clear();
+        valueByKey.clear();
+    }
+
+    int size() {
+        return valueByKey.size();
+    }
+
+    boolean isBuilt() {
+        return built;
+    }
+
+    void markBuilt() {
+        built = true;
+    }
+}
@@ -0,0 +1,552 @@
+package com.dataStoreLite.ds;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.Logger;
+import org.json.simple.JSONObject;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+Server which owns a DataStore and serves it to DataStoreClients over TCP, see DataStoreProtocol.
+Processes share the index and cache of the server instead of each opening and scanning the file.
+
+One selector thread accepts connections, reads request frames and writes response frames without
+blocking. The requests run on a pool of worker threads, since writes wait for their group commit,
+so many requests of a connection are written in the same group. Responses are sent as soon as
+they are ready, in any order. A connection with MAX_PIPELINED_REQUESTS in flight is not read
+until some of them complete, and a request which finds the worker queue full responds BUSY.
+ */
+
+public class DataStoreServer {
+    static final Logger DSLog = (Logger) LogManager.getLogger(LogManager.ROOT_LOGGER_NAME);
+    static final int DEFAULT_WORKER_THREADS = 64; // Threads running requests, mostly waiting for group commits
+    static final int DEFAULT_MAX_PENDING = 10000; // Requests waiting for a worker thread
+    static final int MAX_PIPELINED_REQUESTS = 1024; // Requests in flight per connection before it is no longer read
+    static final int READ_BUFFER_SIZE = 64 * 1024; // Initial input buffer of a connection, grows for larger frames
+    static final int MAX_GATHER = 1024; // Responses written with one gathering write
+    static final long CLOSE_TIMEOUT = 5000; // Milliseconds to write the last responses while closing
+
+    private final IDataStoreLite dataStore;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final int port;
+    private final ThreadPoolExecutor workers;
+    private final Queue<Connection> ready = new ConcurrentLinkedQueue<>(); // Connections with completed requests
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+    private final Thread thread;
+    private volatile boolean closed; // Stops the selector thread
+    private boolean shutdown; // Guarded by this
+
+    /**
+     * Serve dataStore on a port of the loopback interface, for processes on the same host.
+     *
+     * @param dataStore DataStore which runs the requests, closed with the server
+     * @param port      Port to listen on, 0 for any free port, see getPort
+     * @throws IOException if the port cannot be bound
+     */
+
+    DataStoreServer(IDataStoreLite dataStore, int port) throws IOException {
+        this(dataStore, new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+                DEFAULT_WORKER_THREADS, DEFAULT_MAX_PENDING);
+    }
+
+    /**
+     * @param dataStore     DataStore which runs the requests, closed with the server
+     * @param address       Address to listen on
+     * @param workerThreads Number of threads which run requests
+     * @param maxPending    Maximum number of requests waiting for a worker thread
+     * @throws IOException if the address cannot be bound
+     */
+
+    DataStoreServer(IDataStoreLite dataStore, InetSocketAddress address, int workerThreads, int maxPending)
+            throws IOException {
+        if (workerThreads <= 0 || maxPending <= 0) {
+            throw new IllegalArgumentException("Thread count and queue size must be positive");
+        }
+        this.dataStore = dataStore;
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.bind(address);
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            serverChannel.close();
+            selector.close();
+            throw e;
+        }
+        port = ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+        AtomicInteger threadNumber = new AtomicInteger();
+        workers = new ThreadPoolExecutor(workerThreads, workerThreads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(maxPending), runnable -> {
+            Thread worker = new Thread(runnable, "DataStoreLite-Server-Worker-" + threadNumber.incrementAndGet());
+            worker.setDaemon(true);
+            return worker;
+        });
+        workers.allowCoreThreadTimeOut(true);
+        thread = new Thread(this::run, "DataStoreLite-Server");
+        thread.start();
+        DSLog.info("DataStore server listening on : " + serverChannel.getLocalAddress());
+    }
+
+    /**
+     * Run a DataStore server for a file until the process is stopped.
+     * Usage : DataStoreServer filePath port
+     */
+
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            DSLog.error("Usage : DataStoreServer <file path> <port>");
+            System.exit(1);
+        }
+        DataStoreLite dataStore = new DataStoreLite(args[0]);
+        try {
+            DataStoreServer server = new DataStoreServer(dataStore, Integer.parseInt(args[1]));
+            Runtime.getRuntime().addShutdownHook(new Thread(server::close, "DataStoreLite-Server-Shutdown"));
+        } catch (IOException | NumberFormatException e) {
+            DSLog.error("Unable to start the DataStore server : " + e.getMessage());
+            dataStore.close();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @return Port the server listens on
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Stop the server. Requests in flight are completed and their responses are written,
+     * then the connections and the DataStore are closed.
+     */
+
+    public synchronized void close() {
+        if (shutdown) {
+            return;
+        }
+        shutdown = true;
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(60, TimeUnit.SECONDS)) {
+                DSLog.error("Requests still running while closing the DataStore server");
+            }
+            closed = true;
+            selector.wakeup();
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        dataStore.close();
+    }
+
+    private void run() {
+        try {
+            while (!closed) {
+                selector.select();
+                wakeupPending.set(false);
+                Connection connection;
+                while ((connection = ready.poll()) != null) {
+                    completed(connection);
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        try {
+                            accept();
+                        } catch (IOException e) {
+                            DSLog.error("Unable to accept a DataStore client connection : " + e.getMessage());
+                        }
+                        continue;
+                    }
+                    connection = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            read(connection);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            write(connection);
+                        }
+                    } catch (IOException e) {
+                        DSLog.info("Closing DataStore client connection : " + e.getMessage());
+                        connection.close();
+                    }
+                }
+            }
+            flushResponses();
+        } catch (IOException e) {
+            DSLog.error("DataStore server failed : " + e.getMessage());
+        } finally {
+            closed = true;
+            for (SelectionKey key : selector.keys()) {
+                try {
+                    key.channel().close();
+                } catch (IOException e) {
+                    DSLog.error("Unable to close DataStore server connection : " + e.getMessage());
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                DSLog.error("Unable to close DataStore server selector : " + e.getMessage());
+            }
+        }
+    }
+
+    /*
+    Write the responses which are still queued once the workers are done, so clients receive the
+    results of requests which completed before the server closed. No more connections are accepted
+    and no more requests are read. Connections which do not take their responses within
+    CLOSE_TIMEOUT are closed without them.
+     */
+
+    private void flushResponses() throws IOException {
+        serverChannel.close();
+        for (SelectionKey key : selector.keys()) {
+            if (key.isValid()) {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            }
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CLOSE_TIMEOUT);
+        while (true) {
+            Connection connection;
+            while ((connection = ready.poll()) != null) {
+                flush(connection);
+            }
+            boolean pending = false;
+            for (SelectionKey key : selector.keys()) {
+                if (key.isValid() && key.attachment() instanceof Connection) {
+                    connection = (Connection) key.attachment();
+                    pending |= !connection.writing.isEmpty() || !connection.responses.isEmpty();
+                }
+            }
+            if (!pending) {
+                return;
+            }
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) {
+                DSLog.error("Closing DataStore client connections with responses which were not written");
+                return;
+            }
+            selector.select(remaining);
+            for (SelectionKey key : selector.selectedKeys()) {
+                if (key.isValid() && key.attachment() instanceof Connection) {
+                    flush((Connection) key.attachment());
+                }
+            }
+            selector.selectedKeys().clear();
+        }
+    }
+
+    private void flush(Connection connection) {
+        if (!connection.key.isValid()) {
+            return;
+        }
+        try {
+            write(connection);
+        } catch (IOException e) {
+            DSLog.info("Closing DataStore client connection : " + e.getMessage());
+            connection.close();
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        key.attach(new Connection(channel, key));
+    }
+
+    private void read(Connection connection) throws IOException {
+        if (connection.channel.read(connection.input) < 0) {
+            connection.close();
+            return;
+        }
+        dispatchFrames(connection);
+    }
+
+    /*
+    Hand the complete frames in the input buffer of a connection to the workers.
+    Stops reading the connection while MAX_PIPELINED_REQUESTS of its requests are in flight,
+    and grows the input buffer for a frame which does not fit in it.
+     */
+
+    private void dispatchFrames(Connection connection) throws IOException {
+        ByteBuffer input = connection.input;
+        input.flip();
+        int needed = 0;
+        try {
+            while (input.remaining() >= DataStoreProtocol.LENGTH_SIZE) {
+                if (connection.inFlight.get() >= MAX_PIPELINED_REQUESTS) {
+                    connection.paused = true;
+                    connection.key.interestOps(connection.key.interestOps() & ~SelectionKey.OP_READ);
+                    break;
+                }
+                int length = input.getInt(input.position());
+                if (length < DataStoreProtocol.HEADER_SIZE - DataStoreProtocol.LENGTH_SIZE
+                        || length > DataStoreProtocol.MAX_FRAME_SIZE) {
+                    throw new IOException("Invalid frame length : " + length);
+                }
+                if (input.remaining() < DataStoreProtocol.LENGTH_SIZE + length) {
+                    needed = DataStoreProtocol.LENGTH_SIZE + length;
+                    break;
+                }
+                input.position(input.position() + DataStoreProtocol.LENGTH_SIZE);
+                byte[] frame = new byte[length];
+                input.get(frame);
+                dispatch(connection, ByteBuffer.wrap(frame));
+            }
+        } finally {
+            input.compact();
+        }
+        if (needed > input.capacity()) {
+            input.flip();
+            connection.input = ByteBuffer.allocate(needed).put(input);
+        } else if (needed == 0 && input.position() == 0 && input.capacity() > READ_BUFFER_SIZE) {
+            // Give back the buffer of a large frame once it is processed
+            connection.input = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        }
+    }
+
+    private void dispatch(Connection connection, ByteBuffer frame) {
+        int requestId = frame.getInt();
+        byte type = frame.get();
+        ByteBuffer payload = frame.slice();
+        connection.inFlight.incrementAndGet();
+        try {
+            workers.execute(() -> complete(connection, handle(requestId, type, payload)));
+        } catch (RejectedExecutionException e) {
+            complete(connection, DataStoreProtocol.status(requestId, DataStoreProtocol.BUSY));
+        }
+    }
+
+    /*
+    Queue the response of a request for the selector thread, called by the worker which ran it.
+    The selector is only woken up once for the responses completed while it is busy.
+     */
+
+    private void complete(Connection connection, ByteBuffer response) {
+        connection.responses.add(response);
+        connection.inFlight.decrementAndGet();
+        ready.add(connection);
+        if (wakeupPending.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    /*
+    Send the completed responses of a connection and resume reading it if it was paused.
+     */
+
+    private void completed(Connection connection) {
+        if (!connection.key.isValid()) {
+            return;
+        }
+        try {
+            write(connection);
+            if (connection.paused && connection.inFlight.get() < MAX_PIPELINED_REQUESTS) {
+                connection.paused = false;
+                connection.key.interestOps(connection.key.interestOps() | SelectionKey.OP_READ);
+                dispatchFrames(connection);
+            }
+        } catch (IOException e) {
+            DSLog.info("Closing DataStore client connection : " + e.getMessage());
+            connection.close();
+        }
+    }
+
+    /*
+    Write as many responses as the socket takes, with gathering writes.
+    The connection waits for OP_WRITE if the socket is full.
+     */
+
+    private void write(Connection connection) throws IOException {
+        ByteBuffer response;
+        while ((response = connection.responses.poll()) != null) {
+            connection.writing.add(response);
+        }
+        while (!connection.writing.isEmpty()) {
+            ByteBuffer[] buffers = new ByteBuffer[Math.min(connection.writing.size(), MAX_GATHER)];
+            Iterator<ByteBuffer> iterator = connection.writing.iterator();
+            for (int i = 0; i < buffers.length; i++) {
+                buffers[i] = iterator.next();
+            }
+            connection.channel.write(buffers);
+            while (!connection.writing.isEmpty() && !connection.writing.peek().hasRemaining()) {
+                connection.writing.poll();
+            }
+            if (buffers[buffers.length - 1].hasRemaining()) {
+                connection.key.interestOps(connection.key.interestOps() | SelectionKey.OP_WRITE);
+                return;
+            }
+        }
+        connection.key.interestOps(connection.key.interestOps() & ~SelectionKey.OP_WRITE);
+    }
+
+    /*
+    Run a request on the DataStore and build its response, see DataStoreProtocol.
+     */
+
+    private ByteBuffer handle(int requestId, byte type, ByteBuffer payload) {
+        try {
+            switch (type) {
+                case DataStoreProtocol.CREATE: {
+                    String key = DataStoreProtocol.getKey(payload);
+                    int timeToLive = payload.getInt();
+                    ByteBuffer value = DataStoreProtocol.getValue(payload);
+                    return DataStoreProtocol.status(requestId, dataStore.put(key, value, timeToLive)
+                            ? DataStoreProtocol.OK : DataStoreProtocol.REJECTED);
+                }
+                case DataStoreProtocol.READ:
+                    return read(requestId, DataStoreProtocol.getKey(payload));
+                case DataStoreProtocol.DELETE:
+                    return DataStoreProtocol.status(requestId, dataStore.delete(DataStoreProtocol.getKey(payload))
+                            ? DataStoreProtocol.OK : DataStoreProtocol.NOT_FOUND);
+                case DataStoreProtocol.CREATE_ALL:
+                    return createAll(requestId, payload);
+                case DataStoreProtocol.READ_ALL:
+                    return readAll(requestId, keys(payload));
+                case DataStoreProtocol.DELETE_ALL: {
+                    List<String> keys = keys(payload);
+                    return DataStoreProtocol.status(requestId, dataStore.deleteAll(keys) == keys.size()
+                            ? DataStoreProtocol.OK : DataStoreProtocol.NOT_FOUND);
+                }
+                default:
+                    return DataStoreProtocol.error(requestId, "Unknown request type : " + type);
+            }
+        } catch (RuntimeException e) {
+            DSLog.error("DataStore server request failed : " + e);
+            return DataStoreProtocol.error(requestId, e.toString());
+        }
+    }
+
+    private ByteBuffer read(int requestId, String key) {
+        ByteBuffer value = dataStore.get(key);
+        if (value == null) {
+            return DataStoreProtocol.status(requestId, DataStoreProtocol.NOT_FOUND);
+        }
+        ByteBuffer frame = DataStoreProtocol.frame(requestId, DataStoreProtocol.OK,
+                DataStoreProtocol.valueSize(value.remaining()));
+        DataStoreProtocol.putValue(frame, value);
+        frame.flip();
+        return frame;
+    }
+
+    /*
+    The batch is parsed before anything is written, a batch with a value which is not a JSON object is rejected as a whole.
+     */
+
+    private ByteBuffer createAll(int requestId, ByteBuffer payload) {
+        int timeToLive = payload.getInt();
+        int count = payload.getInt();
+        Map<String, JSONObject> values = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            String key = DataStoreProtocol.getKey(payload);
+            JSONObject value = DataStoreLite.parseValue(DataStoreProtocol.getValueBytes(payload));
+            if (value == null) {
+                DSLog.error("Rejected batch of " + count + " keys, invalid value of key : " + key);
+                return DataStoreProtocol.status(requestId, DataStoreProtocol.REJECTED);
+            }
+            values.put(key, value);
+        }
+        int created = dataStore.createAll(values, timeToLive);
+        ByteBuffer frame = DataStoreProtocol.frame(requestId, DataStoreProtocol.OK, 4);
+        frame.putInt(created);
+        frame.flip();
+        return frame;
+    }
+
+    private ByteBuffer readAll(int requestId, List<String> keys) {
+        Map<String, JSONObject> values = dataStore.readAll(keys);
+        List<byte[]> entries = new ArrayList<>(values.size() * 2);
+        int payloadLength = 4;
+        for (Map.Entry<String, JSONObject> entry : values.entrySet()) {
+            byte[] key = DataStoreProtocol.utf8(entry.getKey());
+            byte[] value = DataStoreProtocol.utf8(entry.getValue().toJSONString());
+            entries.add(key);
+            entries.add(value);
+            payloadLength += DataStoreProtocol.keySize(key) + DataStoreProtocol.valueSize(value.length);
+        }
+        ByteBuffer frame = DataStoreProtocol.frame(requestId, DataStoreProtocol.OK, payloadLength);
+        frame.putInt(values.size());
+        for (int i = 0; i < entries.size(); i += 2) {
+            DataStoreProtocol.putKey(frame, entries.get(i));
+            DataStoreProtocol.putValue(frame, entries.get(i + 1));
+        }
+        frame.flip();
+        return frame;
+    }
+
+    private static List<String> keys(ByteBuffer payload) {
+        int count = payload.getInt();
+        if (count < 0 || count > payload.remaining() / 2) {
+            throw new IllegalArgumentException("Invalid key count : " + count);
+        }
+        List<String> keys = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            keys.add(DataStoreProtocol.getKey(payload));
+        }
+        return keys;
+    }
+
+    /*
+    State of one client connection. Only the selector thread reads and writes the socket,
+    workers add responses to the queue.
+     */
+
+    private static final class Connection {
+        final SocketChannel channel;
+        final SelectionKey key;
+        final Queue<ByteBuffer> responses = new ConcurrentLinkedQueue<>(); // Completed by the workers
+        final ArrayDeque<ByteBuffer> writing = new ArrayDeque<>(); // Being written by the selector thread
+        final AtomicInteger inFlight = new AtomicInteger(); // Requests dispatched and not completed
+        ByteBuffer input = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        boolean paused; // Not read until requests in flight complete
+
+        Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+
+        void close() {
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                DSLog.error("Unable to close DataStore client connection : " + e.getMessage());
+            }
+        }
+    }
+}
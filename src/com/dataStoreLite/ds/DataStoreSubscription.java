@@ -0,0 +1,269 @@
+package com.dataStoreLite.ds;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Subscription to the changes of a DataStore, see DataStoreLite.subscribe.
+ * The changes are read from the DataStore file by a thread of the subscription, starting at a
+ * position, and handed to the ChangeListener in batches once they are durable.
+ * A position is the compaction generation of the file and the offset of a record in it.
+ * The subscription follows compactions of the file while it runs. A position which is not in the
+ * current file, for example one stored before a compaction of the file by a DataStore which has been
+ * closed since, restarts the subscription at the start of the file, so the live keys are delivered again.
+ * Changes are delivered at least once and listeners should apply them idempotently.
+ */
+
+public class DataStoreSubscription {
+
+    static final Logger DSLog = (Logger) LogManager.getLogger(LogManager.ROOT_LOGGER_NAME);
+    static final int DEFAULT_BATCH_SIZE = 1024; // Maximum number of changes delivered at once
+    static final long POLL_INTERVAL = 1000; // Milliseconds between checks for changes of other processes
+
+    /**
+     * Position of the first change in the DataStore file.
+     */
+    public static final long EARLIEST = 0;
+
+    /**
+     * Position of the next change written after subscribing.
+     */
+    public static final long LATEST = -1;
+
+    private final DataStoreLite dataStore;
+    private final ChangeListener listener;
+    private final int maxBatchSize;
+    private final long startPosition;
+    private final Thread thread;
+    private volatile boolean closed;
+    private volatile long position;
+    private FileChannel channel; // Channel of the file being read, kept open while the DataStore file is swapped
+    private int generation; // Generation of the file being read
+    private long offset; // Offset of the next record to read
+
+    DataStoreSubscription(DataStoreLite dataStore, long startPosition, int maxBatchSize, ChangeListener listener) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive : " + maxBatchSize);
+        }
+        this.dataStore = dataStore;
+        this.listener = listener;
+        this.maxBatchSize = maxBatchSize;
+        this.startPosition = startPosition;
+        this.position = startPosition;
+        thread = new Thread(this::run, "DataStoreLite-Subscription");
+        thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    static long position(int generation, long offset) {
+        return ((long) generation << 32) | offset;
+    }
+
+    static int generationOf(long position) {
+        return (int) (position >>> 32);
+    }
+
+    static long offsetOf(long position) {
+        return position & 0xFFFFFFFFL;
+    }
+
+    /**
+     * @return Position after the last batch handed to the listener, to resume the subscription from
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Stop the subscription. A batch being delivered is completed first.
+     */
+    public void close() {
+        closed = true;
+        synchronized (dataStore.commits) {
+            dataStore.commits.notifyAll();
+        }
+    }
+
+    private boolean isClosed() {
+        return closed || dataStore.closed;
+    }
+
+    private void run() {
+        try {
+            open();
+            while (!isClosed()) {
+                long limit = awaitChanges();
+                if (limit < 0) {
+                    break;
+                }
+                List<ChangeEvent> batch = readBatch(limit);
+                if (!batch.isEmpty()) {
+                    listener.onChanges(Collections.unmodifiableList(batch));
+                    position = batch.get(batch.size() - 1).getPosition();
+                } else if (limit == Long.MAX_VALUE) {
+                    follow();
+                }
+            }
+        } catch (IOException e) {
+            DSLog.error("Subscription to " + dataStore.filePath + " failed : " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            DSLog.error("Listener of subscription to " + dataStore.filePath + " failed, closing it : " + e);
+        } finally {
+            closed = true;
+            dataStore.subscriptions.remove(this);
+            try {
+                if (channel != null) {
+                    channel.close();
+                }
+            } catch (IOException e) {
+                DSLog.error("Unable to close subscription to : " + dataStore.filePath);
+            }
+        }
+    }
+
+    /*
+    Open the DataStore file and find the offset of the start position in it.
+    The file is opened again if it was swapped by a compaction in between.
+     */
+
+    private void open() throws IOException {
+        while (true) {
+            int currentGeneration;
+            long committed;
+            synchronized (dataStore.commits) {
+                currentGeneration = dataStore.generation;
+                committed = dataStore.committedLength;
+            }
+            channel = FileChannel.open(Paths.get(dataStore.filePath), StandardOpenOption.READ);
+            generation = DataStoreRecord.checkFileHeader(channel);
+            if (generation != currentGeneration) {
+                channel.close();
+                continue;
+            }
+            long from = startPosition;
+            long[] compaction = dataStore.compactions.get(generationOf(from));
+            if (from == LATEST) {
+                offset = committed;
+            } else if (generationOf(from) == generation && offsetOf(from) >= DataStoreRecord.FILE_HEADER_SIZE
+                    && offsetOf(from) <= committed) {
+                offset = offsetOf(from);
+            } else if (compaction != null && compaction[0] == offsetOf(from)
+                    && ((generationOf(from) + 1) & 0xFFFF) == generation) {
+                offset = compaction[1];
+            } else {
+                if (from != EARLIEST) {
+                    DSLog.info("Position is not in the current DataStore file, subscribing from the start : "
+                            + dataStore.filePath);
+                }
+                offset = DataStoreRecord.FILE_HEADER_SIZE;
+            }
+            position = position(generation, offset);
+            return;
+        }
+    }
+
+    /*
+    Wait until there are changes to read.
+    Returns the length of the file up to which changes are durable, Long.MAX_VALUE if the file
+    being read was replaced by compaction and can be read to its end, or -1 once closed.
+    Records appended by other processes are caught up with every POLL_INTERVAL without changes,
+    outside of commits, which catchUp takes after the index lock.
+     */
+
+    private long awaitChanges() throws InterruptedException, IOException {
+        while (!isClosed()) {
+            synchronized (dataStore.commits) {
+                if (generation != dataStore.generation) {
+                    return Long.MAX_VALUE;
+                }
+                if (dataStore.committedLength > offset) {
+                    return dataStore.committedLength;
+                }
+                dataStore.commits.wait(POLL_INTERVAL);
+                if (generation != dataStore.generation || dataStore.committedLength > offset) {
+                    continue;
+                }
+            }
+            dataStore.catchUp();
+        }
+        return -1;
+    }
+
+    /*
+    Read up to maxBatchSize changes between the current offset and limit.
+     */
+
+    private List<ChangeEvent> readBatch(long limit) throws IOException {
+        DataStoreRecordReader reader = new DataStoreRecordReader(channel, offset);
+        List<ChangeEvent> batch = new ArrayList<>();
+        while (batch.size() < maxBatchSize && reader.next() && reader.position() <= limit) {
+            batch.add(event(reader));
+            offset = reader.position();
+        }
+        if (batch.isEmpty() && reader.isCorrupt() && limit != Long.MAX_VALUE) {
+            throw new IOException("Corrupt record at offset : " + offset);
+        }
+        return batch;
+    }
+
+    private ChangeEvent event(DataStoreRecordReader reader) throws IOException {
+        long eventPosition = position(generation, reader.position());
+        if (reader.isTombstone()) {
+            return new ChangeEvent(reader.isExpiry() ? ChangeEvent.Type.EXPIRE : ChangeEvent.Type.DELETE,
+                    reader.key(), null, 0, 0, reader.createdMillis(), eventPosition);
+        }
+        ByteBuffer stored = reader.value();
+        byte[] value = new byte[stored.remaining()];
+        stored.get(value);
+        if (reader.isCompressed()) {
+            value = DataStoreRecord.inflate(value);
+        }
+        long version = reader.version();
+        return new ChangeEvent(version > DataStoreRecord.FIRST_VERSION ? ChangeEvent.Type.UPDATE : ChangeEvent.Type.CREATE,
+                reader.key(), value, version, reader.timeToLive(), reader.createdMillis(), eventPosition);
+    }
+
+    /*
+    Move on to the compacted file once the file being read is read to its end.
+    The end of the old file corresponds to the end of the records copied into the compacted file,
+    which the subscription continues after. If the compacted file was itself compacted already,
+    the subscription restarts at the start of the current file.
+     */
+
+    private void follow() throws IOException {
+        long[] compaction = dataStore.compactions.get(generation);
+        FileChannel next = FileChannel.open(Paths.get(dataStore.filePath), StandardOpenOption.READ);
+        int nextGeneration;
+        try {
+            nextGeneration = DataStoreRecord.checkFileHeader(next);
+        } catch (IOException e) {
+            next.close();
+            throw e;
+        }
+        channel.close();
+        channel = next;
+        if (compaction != null && compaction[0] == offset && nextGeneration == ((generation + 1) & 0xFFFF)) {
+            offset = compaction[1];
+        } else {
+            DSLog.info("Subscription fell behind more than one compaction, subscribing from the start : "
+                    + dataStore.filePath);
+            offset = DataStoreRecord.FILE_HEADER_SIZE;
+        }
+        generation = nextGeneration;
+        position = position(generation, offset);
+    }
+}
@@ -0,0 +1,204 @@
+package com.dataStoreLite.ds;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.Logger;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/*
+Single writer of a DataStore file.
+create and delete operations are queued and written by one thread, which takes
+the queued operations as a group, appends them with a single write and forces
+them to disk according to the DurabilityMode before the callers return.
+ */
+
+class DataStoreWriter {
+
+    static final Logger DSLog = (Logger) LogManager.getLogger(LogManager.ROOT_LOGGER_NAME);
+    static final int MAX_GROUP_SIZE = 1024; // Maximum number of operations written as one group
+
+    /*
+    Operation of a queued write, the writer checks its condition against the current record of every key.
+    CREATE          - write the key if it is not available.
+    UPDATE          - write the key if it is available.
+    COMPARE_AND_SET - write the key if the version of its current record is the expected version,
+                      0 if the key must not be available.
+    DELETE          - delete the key if it is available.
+    EXPIRE          - delete the key if its time to live has passed.
+     */
+
+    enum Operation {
+        CREATE,
+        UPDATE,
+        COMPARE_AND_SET,
+        DELETE,
+        EXPIRE
+    }
+
+    /*
+    A queued write of one or more keys.
+    records holds the encoded records for a write and is null for a delete or expiry.
+    applied collects the keys which were actually written or deleted.
+     */
+
+    static final class WriteRequest {
+        final Operation operation;
+        final List<String> keys;
+        final List<ByteBuffer> records;
+        final long expectedVersion;
+        final List<String> applied = new ArrayList<>();
+        final CompletableFuture<List<String>> result = new CompletableFuture<>();
+
+        private WriteRequest(Operation operation, List<String> keys, List<ByteBuffer> records, long expectedVersion) {
+            this.operation = operation;
+            this.keys = keys;
+            this.records = records;
+            this.expectedVersion = expectedVersion;
+        }
+
+        static WriteRequest create(List<String> keys, List<ByteBuffer> records) {
+            return new WriteRequest(Operation.CREATE, keys, records, 0);
+        }
+
+        static WriteRequest create(String key, ByteBuffer record) {
+            return create(Collections.singletonList(key), Collections.singletonList(record));
+        }
+
+        static WriteRequest write(Operation operation, String key, long expectedVersion, ByteBuffer record) {
+            return new WriteRequest(operation, Collections.singletonList(key), Collections.singletonList(record),
+                    expectedVersion);
+        }
+
+        static WriteRequest delete(List<String> keys) {
+            return new WriteRequest(Operation.DELETE, keys, null, 0);
+        }
+
+        static WriteRequest expire(List<String> keys) {
+            return new WriteRequest(Operation.EXPIRE, keys, null, 0);
+        }
+    }
+
+    private final DataStoreLite dataStore;
+    private final DurabilityMode durabilityMode;
+    private final long groupCommitWindowNanos;
+    private final BlockingQueue<WriteRequest> queue = new LinkedBlockingQueue<>();
+    private final Thread writerThread;
+    private final WriteRequest closeRequest = WriteRequest.delete(Collections.<String>emptyList()); // Stops the writer thread
+    private volatile boolean closed;
+
+    DataStoreWriter(DataStoreLite dataStore, DataStoreLiteOptions options) {
+        this.dataStore = dataStore;
+        this.durabilityMode = options.getDurabilityMode();
+        this.groupCommitWindowNanos = TimeUnit.MILLISECONDS.toNanos(options.getGroupCommitWindow());
+        writerThread = new Thread(this::run, "DataStoreLite-Writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /*
+    Queue a request and wait until it is written with the configured durability.
+    Returns the keys which were created or deleted.
+     */
+
+    List<String> write(WriteRequest request) throws IOException {
+        if (closed) {
+            throw new IOException("DataStore is closed : " + dataStore.filePath);
+        }
+        queue.add(request);
+        try {
+            return request.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for write");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private void run() {
+        List<WriteRequest> group = new ArrayList<>();
+        while (true) {
+            try {
+                collectGroup(group);
+            } catch (InterruptedException e) {
+                return;
+            }
+            boolean stop = group.remove(closeRequest);
+            try {
+                if (!group.isEmpty()) {
+                    dataStore.applyWrites(group, durabilityMode != DurabilityMode.OS_BUFFERED);
+                }
+                for (WriteRequest request : group) {
+                    request.result.complete(request.applied);
+                }
+            } catch (IOException | RuntimeException e) {
+                DSLog.error("Write failed for : " + dataStore.filePath);
+                for (WriteRequest request : group) {
+                    request.result.completeExceptionally(e);
+                }
+            }
+            group.clear();
+            if (stop) {
+                return;
+            }
+        }
+    }
+
+    /*
+    Stop the writer once the requests queued so far are written.
+    Requests which arrive while the writer stops fail.
+     */
+
+    void close() {
+        closed = true;
+        queue.add(closeRequest);
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        WriteRequest request;
+        while ((request = queue.poll()) != null) {
+            request.result.completeExceptionally(new IOException("DataStore is closed : " + dataStore.filePath));
+        }
+    }
+
+    /*
+    Wait for the next request and add it to the group with the requests that join it.
+    SYNC writes one request at a time. GROUP_COMMIT takes every queued request and waits up
+    to the group commit window for more. OS_BUFFERED takes every queued request.
+     */
+
+    private void collectGroup(List<WriteRequest> group) throws InterruptedException {
+        group.add(queue.take());
+        if (durabilityMode == DurabilityMode.SYNC) {
+            return;
+        }
+        queue.drainTo(group, MAX_GROUP_SIZE - group.size());
+        if (durabilityMode == DurabilityMode.GROUP_COMMIT && groupCommitWindowNanos > 0) {
+            long deadline = System.nanoTime() + groupCommitWindowNanos;
+            long remaining;
+            while (group.size() < MAX_GROUP_SIZE && (remaining = deadline - System.nanoTime()) > 0) {
+                WriteRequest next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                if (next == null) {
+                    break;
+                }
+                group.add(next);
+                queue.drainTo(group, MAX_GROUP_SIZE - group.size());
+            }
+        }
+    }
+}
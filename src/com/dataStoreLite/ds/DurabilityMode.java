@@ -0,0 +1,15 @@
+package com.dataStoreLite.ds;
+
+/*
+Durability of create and delete operations.
+SYNC - every operation is forced to disk before it returns.
+GROUP_COMMIT - operations queued together (or within the group commit window) are forced to disk
+               with a single force before they return.
+OS_BUFFERED - operations return once they are written to the operating system, which flushes them later.
+ */
+
+public enum DurabilityMode {
+    SYNC,
+    GROUP_COMMIT,
+    OS_BUFFERED
+}
@@ -2,10 +2,44 @@ package com.dataStoreLite.ds;
 
 import org.json.simple.JSONObject;
 
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
 public interface IDataStoreLite {
-    void create(String key, JSONObject value);
+    boolean create(String key, JSONObject value);
+
+    boolean create(String key, JSONObject value, int timeToLive);
 
     JSONObject read(String key);
 
-    void delete(String key);
+    boolean update(String key, JSONObject value, int timeToLive);
+
+    boolean putIfAbsent(String key, JSONObject value, int timeToLive);
+
+    boolean compareAndSet(String key, long expectedVersion, JSONObject value, int timeToLive);
+
+    long version(String key);
+
+    boolean put(String key, ByteBuffer value, int timeToLive);
+
+    ByteBuffer get(String key);
+
+    boolean delete(String key);
+
+    int createAll(Map<String, JSONObject> values, int timeToLive);
+
+    Map<String, JSONObject> readAll(Collection<String> keys);
+
+    int deleteAll(Collection<String> keys);
+
+    Stream<Map.Entry<String, JSONObject>> scan(String fromKey, String toKey);
+
+    Stream<Map.Entry<String, JSONObject>> scanPrefix(String prefix);
+
+    Set<String> findBy(String field, Object value);
+
+    void close();
 }
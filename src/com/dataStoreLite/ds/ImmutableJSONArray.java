@@ -0,0 +1,138 @@
+package com.dataStoreLite.ds;
+
+import org.json.simple.JSONArray;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/*
+Read only JSONArray nested in an ImmutableJSONObject.
+Every method which would modify the array throws UnsupportedOperationException.
+ */
+
+@SuppressWarnings({"rawtypes", "unchecked"})
+final class ImmutableJSONArray extends JSONArray {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List view = Collections.unmodifiableList(new AbstractList() {
+        @Override
+        public Object get(int index) {
+            return ImmutableJSONArray.super.get(index);
+        }
+
+        @Override
+        public int size() {
+            return ImmutableJSONArray.super.size();
+        }
+    });
+
+    ImmutableJSONArray(List values) {
+        super.ensureCapacity(values.size());
+        for (Object value : values) {
+            super.add(ImmutableJSONObject.freeze(value));
+        }
+    }
+
+    /*
+    Serialized as a plain JSONArray, the read only view is not serializable.
+     */
+
+    private Object writeReplace() {
+        JSONArray array = new JSONArray();
+        array.addAll(this);
+        return array;
+    }
+
+    @Override
+    public Iterator iterator() {
+        return view.iterator();
+    }
+
+    @Override
+    public ListIterator listIterator() {
+        return view.listIterator();
+    }
+
+    @Override
+    public ListIterator listIterator(int index) {
+        return view.listIterator(index);
+    }
+
+    @Override
+    public List subList(int fromIndex, int toIndex) {
+        return view.subList(fromIndex, toIndex);
+    }
+
+    @Override
+    public boolean add(Object value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void add(int index, Object value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean addAll(Collection values) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean addAll(int index, Collection values) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Object set(int index, Object value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Object remove(int index) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean remove(Object value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean removeAll(Collection values) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean retainAll(Collection values) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean removeIf(Predicate filter) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void replaceAll(UnaryOperator operator) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void sort(Comparator comparator) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException();
+    }
+}
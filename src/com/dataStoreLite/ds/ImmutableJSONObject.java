@@ -0,0 +1,148 @@
+package com.dataStoreLite.ds;
+
+import org.json.simple.JSONObject;
+
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/*
+Read only JSONObject returned by read and readAll.
+The same object is kept in DSCache and handed to every reader of the key, so a cached read
+neither parses JSON nor allocates. Nested objects and arrays are read only as well.
+Every method which would modify the object throws UnsupportedOperationException,
+callers which need to modify a value copy it with new JSONObject(value).
+ */
+
+@SuppressWarnings({"rawtypes", "unchecked"})
+final class ImmutableJSONObject extends JSONObject {
+
+    private static final long serialVersionUID = 1L;
+
+    final int size; // Length of the JSON string in bytes, used to weigh the value in DSCache
+
+    private final Map view = Collections.unmodifiableMap(new AbstractMap() {
+        @Override
+        public Set<Entry> entrySet() {
+            return ImmutableJSONObject.super.entrySet();
+        }
+    });
+
+    ImmutableJSONObject(Map values, int size) {
+        this.size = size;
+        for (Object entry : values.entrySet()) {
+            Map.Entry mapEntry = (Map.Entry) entry;
+            super.put(mapEntry.getKey(), freeze(mapEntry.getValue()));
+        }
+    }
+
+    /*
+    Serialized as a plain JSONObject, the read only view is not serializable.
+     */
+
+    private Object writeReplace() {
+        return new JSONObject(this);
+    }
+
+    /*
+    Read only copy of a parsed JSON value. Strings, numbers, booleans and null are immutable already.
+     */
+
+    static Object freeze(Object value) {
+        if (value instanceof ImmutableJSONObject || value instanceof ImmutableJSONArray) {
+            return value;
+        }
+        if (value instanceof Map) {
+            return new ImmutableJSONObject((Map) value, 0);
+        }
+        if (value instanceof List) {
+            return new ImmutableJSONArray((List) value);
+        }
+        return value;
+    }
+
+    @Override
+    public Set entrySet() {
+        return view.entrySet();
+    }
+
+    @Override
+    public Set keySet() {
+        return view.keySet();
+    }
+
+    @Override
+    public Collection values() {
+        return view.values();
+    }
+
+    @Override
+    public Object put(Object key, Object value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void putAll(Map values) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Object remove(Object key) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Object putIfAbsent(Object key, Object value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean replace(Object key, Object oldValue, Object newValue) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Object replace(Object key, Object value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void replaceAll(BiFunction function) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Object computeIfAbsent(Object key, Function mappingFunction) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Object computeIfPresent(Object key, BiFunction remappingFunction) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Object compute(Object key, BiFunction remappingFunction) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Object merge(Object key, Object value, BiFunction remappingFunction) {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,495 @@
+package com.dataStoreLite.ds;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.Logger;
+import org.json.simple.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/*
+Key Value Data Store split over several DataStore files (shards) in one directory.
+Keys are assigned to shards by hash. Every shard is a DataStoreLite with its own file, locks,
+writer and index, so operations on different shards run in parallel and the capacity of the
+store is the number of shards times MAX_FILE_SIZE.
+
+The number of shards is kept in the SHARD_COUNT_FILE of the directory and cannot change
+once the store is created, since the shard of a key depends on it.
+ */
+
+public class ShardedDataStoreLite implements IDataStoreLite {
+    static final Logger DSLog = (Logger) LogManager.getLogger(LogManager.ROOT_LOGGER_NAME);
+    static final int DEFAULT_SHARD_COUNT = 8;
+    static final String SHARD_COUNT_FILE = "DataStoreLite.shards";
+    static final String SHARD_FILE_FORMAT = "DataStoreLite-%03d.txt";
+
+    private final DataStoreLite[] shards;
+    private final ExecutorService batchExecutor; // Runs the parts of a batch on different shards in parallel
+
+    /**
+     * Initialize a sharded DataStore in the given directory with DEFAULT_SHARD_COUNT shards and default options.
+     *
+     * @param directory Directory of the shard files, created if it does not exist
+     */
+
+    ShardedDataStoreLite(String directory) {
+        this(directory, DEFAULT_SHARD_COUNT);
+    }
+
+    /**
+     * Initialize a sharded DataStore in the given directory with default options.
+     *
+     * @param directory Directory of the shard files, created if it does not exist
+     * @param shardCount Number of shards of a new store
+     */
+
+    ShardedDataStoreLite(String directory, int shardCount) {
+        this(directory, shardCount, new DataStoreLiteOptions());
+    }
+
+    /**
+     * Initialize a sharded DataStore in the given directory.
+     * An existing store keeps the number of shards it was created with.
+     *
+     * @param directory  Directory of the shard files, created if it does not exist
+     * @param shardCount Number of shards of a new store
+     * @param options    Tuning options for every shard
+     */
+
+    ShardedDataStoreLite(String directory, int shardCount, DataStoreLiteOptions options) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("Shard count must be positive : " + shardCount);
+        }
+        int count = 0;
+        try {
+            count = openShardCount(new File(directory).toPath(), shardCount);
+            shards = new DataStoreLite[count];
+            for (int i = 0; i < count; i++) {
+                File shardFile = new File(directory, String.format(SHARD_FILE_FORMAT, i));
+                if (shardFile.createNewFile()) {
+                    DSLog.info("DataStore file created : " + shardFile.getAbsolutePath());
+                }
+                shards[i] = new DataStoreLite(shardFile.getPath(), options);
+            }
+        } catch (IOException e) {
+            DSLog.error("Unable to open the sharded DataStore : " + directory + " " + e.getMessage());
+            System.exit(1);
+            throw new IllegalStateException(e);
+        }
+        batchExecutor = Executors.newFixedThreadPool(Math.min(count, Runtime.getRuntime().availableProcessors()), runnable -> {
+            Thread thread = new Thread(runnable, "DataStoreLite-Shards");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /*
+    Read the number of shards of an existing store, or record shardCount for a new one.
+     */
+
+    private static int openShardCount(Path directory, int shardCount) throws IOException {
+        Files.createDirectories(directory);
+        Path countFile = directory.resolve(SHARD_COUNT_FILE);
+        if (!Files.exists(countFile)) {
+            Files.write(countFile, String.valueOf(shardCount).getBytes(StandardCharsets.UTF_8));
+            return shardCount;
+        }
+        int existing = Integer.parseInt(new String(Files.readAllBytes(countFile), StandardCharsets.UTF_8).trim());
+        if (existing != shardCount) {
+            DSLog.error("The sharded DataStore has " + existing + " shards, ignoring shard count : " + shardCount);
+        }
+        return existing;
+    }
+
+    /*
+    Shard of a key. The hash is mixed differently from the key locks inside a shard,
+    so every shard still spreads its keys over all of its lock stripes.
+     */
+
+    int shardOf(String key) {
+        int hash = key.hashCode() * 0x9E3779B9;
+        hash ^= (hash >>> 16);
+        return (hash & 0x7FFFFFFF) % shards.length;
+    }
+
+    private DataStoreLite shard(String key) {
+        return shards[shardOf(key)];
+    }
+
+    /*
+    Split keys by shard, keeping their order within each shard.
+     */
+
+    private <V> Map<Integer, V> groupByShard(Collection<String> keys, Function<String, V> value,
+                                             BiConsumer<V, String> add) {
+        Map<Integer, V> groups = new HashMap<>();
+        for (String key : keys) {
+            V group = groups.computeIfAbsent(shardOf(key), shard -> value.apply(key));
+            add.accept(group, key);
+        }
+        return groups;
+    }
+
+    /*
+    Run a task for every shard of a batch, in parallel when the batch spans several shards.
+    Every shard finishes its part before a failure is thrown, the exception of a shard is thrown
+    as it is, like a batch on a single shard.
+     */
+
+    private <V, R> Map<Integer, R> forEachShard(Map<Integer, V> groups, BiFunction<DataStoreLite, V, R> task) {
+        Map<Integer, R> results = new HashMap<>();
+        if (groups.size() == 1) {
+            Map.Entry<Integer, V> group = groups.entrySet().iterator().next();
+            results.put(group.getKey(), task.apply(shards[group.getKey()], group.getValue()));
+            return results;
+        }
+        Map<Integer, CompletableFuture<R>> futures = new HashMap<>();
+        for (Map.Entry<Integer, V> group : groups.entrySet()) {
+            futures.put(group.getKey(), CompletableFuture.supplyAsync(
+                    () -> task.apply(shards[group.getKey()], group.getValue()), batchExecutor));
+        }
+        RuntimeException failure = null;
+        for (Map.Entry<Integer, CompletableFuture<R>> future : futures.entrySet()) {
+            try {
+                results.put(future.getKey(), future.getValue().join());
+            } catch (CompletionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return results;
+    }
+
+    /**
+     * Create Data in the shard of the key.
+     *
+     * @param key   String with maximum length of 32 Characters
+     * @param value JSON Object with Maximum size of 16KB
+     * @return true if the key was created, false if it is already available or invalid
+     */
+
+    @Override
+    public boolean create(String key, JSONObject value) {
+        return shard(key).create(key, value);
+    }
+
+    /**
+     * Create Data in the shard of the key.
+     *
+     * @param key        String with maximum length of 32 Characters
+     * @param value      JSON Object with Maximum size of 16KB
+     * @param timeToLive Integer representing the number of seconds
+     *                   the key should be retained in the data store
+     * @return true if the key was created, false if it is already available or invalid
+     */
+
+    @Override
+    public boolean create(String key, JSONObject value, int timeToLive) {
+        return shard(key).create(key, value, timeToLive);
+    }
+
+    /**
+     * Read the value of the key from its shard.
+     *
+     * @param key String for the required JSON Object
+     * @return JSON Object from dataStore
+     */
+
+    @Override
+    public JSONObject read(String key) {
+        return shard(key).read(key);
+    }
+
+    /**
+     * Replace the value of the key in its shard, see DataStoreLite.update.
+     *
+     * @return true if the key was available and its value was replaced
+     */
+
+    @Override
+    public boolean update(String key, JSONObject value, int timeToLive) {
+        return shard(key).update(key, value, timeToLive);
+    }
+
+    /**
+     * Create Data in the shard of the key unless the key is already available.
+     *
+     * @return true if the key was created
+     */
+
+    @Override
+    public boolean putIfAbsent(String key, JSONObject value, int timeToLive) {
+        return shard(key).putIfAbsent(key, value, timeToLive);
+    }
+
+    /**
+     * Replace the value of the key in its shard if its version is the expected version,
+     * see DataStoreLite.compareAndSet.
+     *
+     * @return true if the version matched and the value was written
+     */
+
+    @Override
+    public boolean compareAndSet(String key, long expectedVersion, JSONObject value, int timeToLive) {
+        return shard(key).compareAndSet(key, expectedVersion, value, timeToLive);
+    }
+
+    /**
+     * Version of the value of the key in its shard, 0 if the key is not available.
+     */
+
+    @Override
+    public long version(String key) {
+        return shard(key).version(key);
+    }
+
+    /**
+     * Create Data from an already serialized JSON value in the shard of the key.
+     *
+     * @param key        String with maximum length of 32 Characters
+     * @param value      UTF-8 JSON text with Maximum size of 16KB
+     * @param timeToLive Integer representing the number of seconds
+     *                   the key should be retained in the data store
+     * @return true if the key was created
+     */
+
+    @Override
+    public boolean put(String key, ByteBuffer value, int timeToLive) {
+        return shard(key).put(key, value, timeToLive);
+    }
+
+    /**
+     * Read the stored JSON text of the key from its shard.
+     *
+     * @param key String for the required value
+     * @return Read only buffer of the value, null if the key is not found
+     */
+
+    @Override
+    public ByteBuffer get(String key) {
+        return shard(key).get(key);
+    }
+
+    /**
+     * Delete the key from its shard.
+     *
+     * @param key Parameter to remove data. (String)
+     * @return true if the key was deleted, false if it is not found
+     */
+
+    @Override
+    public boolean delete(String key) {
+        return shard(key).delete(key);
+    }
+
+    /**
+     * Create a batch of Data. Every shard writes its part of the batch with a single append,
+     * the shards write in parallel.
+     *
+     * @param values     Key value pairs
+     * @param timeToLive Integer representing the number of seconds
+     *                   the keys should be retained in the data store
+     * @return Number of keys which were created over all shards
+     */
+
+    @Override
+    public int createAll(Map<String, JSONObject> values, int timeToLive) {
+        Map<Integer, Map<String, JSONObject>> groups = groupByShard(values.keySet(),
+                key -> new LinkedHashMap<>(), (group, key) -> group.put(key, values.get(key)));
+        int created = 0;
+        for (int count : forEachShard(groups, (shard, group) -> shard.createAll(group, timeToLive)).values()) {
+            created += count;
+        }
+        return created;
+    }
+
+    /**
+     * Read a batch of values, the shards are read in parallel.
+     *
+     * @param keys Keys of the required JSON Objects
+     * @return Read only JSON Objects by key, in the order of the keys.
+     * Keys which are not found in the dataStore are left out.
+     */
+
+    @Override
+    public Map<String, JSONObject> readAll(Collection<String> keys) {
+        Map<Integer, List<String>> groups = groupByShard(keys, key -> new ArrayList<>(), List::add);
+        Map<Integer, Map<String, JSONObject>> found = forEachShard(groups, DataStoreLite::readAll);
+        Map<String, JSONObject> result = new LinkedHashMap<>();
+        for (String key : keys) {
+            JSONObject value = found.get(shardOf(key)).get(key);
+            if (value != null) {
+                result.put(key, value);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Delete a batch of keys, the shards are written in parallel.
+     *
+     * @param keys Keys to remove
+     * @return Number of keys which were deleted over all shards
+     */
+
+    @Override
+    public int deleteAll(Collection<String> keys) {
+        Map<Integer, List<String>> groups = groupByShard(keys, key -> new ArrayList<>(), List::add);
+        int deleted = 0;
+        for (int count : forEachShard(groups, DataStoreLite::deleteAll).values()) {
+            deleted += count;
+        }
+        return deleted;
+    }
+
+    /**
+     * Scan the keys from fromKey to toKey in key order over all shards.
+     * The scans of the shards are merged lazily, at most one value per shard is read ahead.
+     *
+     * @param fromKey First key of the scan (inclusive), null to start at the first key
+     * @param toKey   End of the scan (exclusive), null to scan to the last key
+     * @return Keys with their read only JSON Objects
+     */
+
+    @Override
+    public Stream<Map.Entry<String, JSONObject>> scan(String fromKey, String toKey) {
+        return merge(shard -> shard.scan(fromKey, toKey));
+    }
+
+    /**
+     * Scan the keys which start with prefix in key order over all shards.
+     *
+     * @param prefix Prefix of the keys, an empty prefix scans every key
+     * @return Keys with their read only JSON Objects
+     */
+
+    @Override
+    public Stream<Map.Entry<String, JSONObject>> scanPrefix(String prefix) {
+        return merge(shard -> shard.scanPrefix(prefix));
+    }
+
+    /**
+     * Keys of every shard whose value has the given value in an indexed field.
+     *
+     * @param field Top level field declared with DataStoreLiteOptions.secondaryIndex
+     * @param value String, number or boolean value of the field
+     * @return Matching keys of all shards
+     */
+
+    @Override
+    public Set<String> findBy(String field, Object value) {
+        Set<String> keys = new HashSet<>();
+        for (DataStoreLite shard : shards) {
+            keys.addAll(shard.findBy(field, value));
+        }
+        return keys;
+    }
+
+    /*
+    Merge the sorted scans of every shard into one sorted stream.
+    The shard with the smallest next key is kept at the head of a priority queue.
+     */
+
+    private Stream<Map.Entry<String, JSONObject>> merge(Function<DataStoreLite, Stream<Map.Entry<String, JSONObject>>> scan) {
+        Comparator<Map.Entry<Map.Entry<String, JSONObject>, Iterator<Map.Entry<String, JSONObject>>>> byKey =
+                Comparator.comparing(head -> head.getKey().getKey());
+        PriorityQueue<Map.Entry<Map.Entry<String, JSONObject>, Iterator<Map.Entry<String, JSONObject>>>> heads =
+                new PriorityQueue<>(shards.length, byKey);
+        List<Iterator<Map.Entry<String, JSONObject>>> pending = new ArrayList<>(shards.length);
+        for (DataStoreLite shard : shards) {
+            pending.add(scan.apply(shard).iterator());
+        }
+        Iterator<Map.Entry<String, JSONObject>> merged = new Iterator<Map.Entry<String, JSONObject>>() {
+            @Override
+            public boolean hasNext() {
+                // Shards are only read once the merged stream is consumed
+                for (Iterator<Map.Entry<String, JSONObject>> iterator : pending) {
+                    advance(iterator);
+                }
+                pending.clear();
+                return !heads.isEmpty();
+            }
+
+            @Override
+            public Map.Entry<String, JSONObject> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Map.Entry<Map.Entry<String, JSONObject>, Iterator<Map.Entry<String, JSONObject>>> head = heads.poll();
+                pending.add(head.getValue());
+                return head.getKey();
+            }
+
+            private void advance(Iterator<Map.Entry<String, JSONObject>> iterator) {
+                if (iterator.hasNext()) {
+                    heads.add(new AbstractMap.SimpleImmutableEntry<>(iterator.next(), iterator));
+                }
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(merged,
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Subscribe to the changes of one shard, see DataStoreLite.subscribe.
+     * Every shard is a DataStore file of its own, with its own positions and its own order of changes.
+     *
+     * @param shard        Shard between 0 and shardCount() - 1
+     * @param fromPosition Position of a ChangeEvent of the shard to resume after, DataStoreSubscription.EARLIEST
+     *                     or DataStoreSubscription.LATEST
+     * @param listener     Receives the changes of the shard in batches
+     * @return The running subscription, closed along with the shard
+     */
+
+    public DataStoreSubscription subscribe(int shard, long fromPosition, ChangeListener listener) {
+        return shards[shard].subscribe(fromPosition, listener);
+    }
+
+    /**
+     * Close every shard.
+     */
+
+    @Override
+    public void close() {
+        batchExecutor.shutdown();
+        for (DataStoreLite shard : shards) {
+            shard.close();
+        }
+    }
+
+    public int shardCount() {
+        return shards.length;
+    }
+}
@@ -0,0 +1,108 @@
+package com.dataStoreLite.ds;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+Per key locks inside a process.
+Keys are hashed to a fixed number of read/write lock stripes, so operations on different keys
+rarely contend while operations on the same key are ordered.
+Stripes are always taken in ascending order, which keeps batch operations and
+lockAll free of deadlocks.
+ */
+
+class StripedLock {
+    static final int DEFAULT_STRIPES = 256;
+
+    private final ReentrantReadWriteLock[] stripes;
+
+    StripedLock(int count) {
+        stripes = new ReentrantReadWriteLock[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    private int stripeOf(String key) {
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        return (hash & 0x7FFFFFFF) % stripes.length;
+    }
+
+    /*
+    Sorted, distinct stripes of the given keys.
+     */
+
+    int[] stripesOf(Collection<String> keys) {
+        int[] result = new int[keys.size()];
+        int i = 0;
+        for (String key : keys) {
+            result[i++] = stripeOf(key);
+        }
+        Arrays.sort(result);
+        int distinct = 0;
+        for (int j = 0; j < result.length; j++) {
+            if (j == 0 || result[j] != result[j - 1]) {
+                result[distinct++] = result[j];
+            }
+        }
+        return Arrays.copyOf(result, distinct);
+    }
+
+    void readLock(String key) {
+        stripes[stripeOf(key)].readLock().lock();
+    }
+
+    void readUnlock(String key) {
+        stripes[stripeOf(key)].readLock().unlock();
+    }
+
+    void writeLock(String key) {
+        stripes[stripeOf(key)].writeLock().lock();
+    }
+
+    void writeUnlock(String key) {
+        stripes[stripeOf(key)].writeLock().unlock();
+    }
+
+    void readLock(int[] stripeIndexes) {
+        for (int stripe : stripeIndexes) {
+            stripes[stripe].readLock().lock();
+        }
+    }
+
+    void readUnlock(int[] stripeIndexes) {
+        for (int i = stripeIndexes.length - 1; i >= 0; i--) {
+            stripes[stripeIndexes[i]].readLock().unlock();
+        }
+    }
+
+    void writeLock(int[] stripeIndexes) {
+        for (int stripe : stripeIndexes) {
+            stripes[stripe].writeLock().lock();
+        }
+    }
+
+    void writeUnlock(int[] stripeIndexes) {
+        for (int i = stripeIndexes.length - 1; i >= 0; i--) {
+            stripes[stripeIndexes[i]].writeLock().unlock();
+        }
+    }
+
+    /*
+    Exclusive access to every key, used while the DataStore file is swapped.
+     */
+
+    void lockAll() {
+        for (ReentrantReadWriteLock stripe : stripes) {
+            stripe.writeLock().lock();
+        }
+    }
+
+    void unlockAll() {
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            stripes[i].writeLock().unlock();
+        }
+    }
+}